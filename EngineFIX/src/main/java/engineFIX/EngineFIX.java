@@ -1,16 +1,68 @@
 package engineFIX;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class EngineFIX {
     private static final String supportedFixVersion = "FIX.4.4";
     private static final char fixDelimiter = 0x1; // (SOH) character.
+    private static final int initialCapacity = 256;
+
+    // What parseTag() does with a tag, looked up by tag number in tagHandlers.
+    private static final byte unsupportedTag = 0;
+    private static final byte checkSumTag = 1;
+    private static final byte bodyLengthTag = 2;
+    private static final byte orderQtyTag = 3;
+    private static final byte priceTag = 4;
+    // Kept in the view, the header ones are not part of BodyLength.
+    private static final byte headerTag = 5;
+    private static final byte bodyTag = 6;
+
+    // Handler of every tag the parser supports, indexed by tag number, so finding it costs the same
+    // whatever the number of tags. Supporting a new tag is registering it here and adding its getter.
+    private static final byte[] tagHandlers = new byte[FixMessageView.maxTag + 1];
+
+    static {
+        register(8, headerTag);
+        register(9, bodyLengthTag);
+        register(10, checkSumTag);
+        register(11, bodyTag);
+        register(34, bodyTag);
+        register(35, bodyTag);
+        register(38, orderQtyTag);
+        register(40, bodyTag);
+        register(44, priceTag);
+        register(49, bodyTag);
+        register(50, bodyTag);
+        register(52, bodyTag);
+        register(54, bodyTag);
+        register(55, bodyTag);
+        register(56, bodyTag);
+        register(59, bodyTag);
+        register(112, bodyTag);
+    }
+
+    private static void register(int tag, byte handler)
+    {
+        tagHandlers[tag] = handler;
+    }
 
     // This is where we store the raw data of the message.
-    private ArrayList<Byte> rawData;
+    private byte[] rawData;
 
-    // Tag 8: FIX protocol version.
-    private String  beginString;
+    // Number of bytes used in rawData.
+    private int rawLength;
+
+    // Offset in rawData where the tag being read starts.
+    private int tagStart;
+
+    // Gathered by scan() for the tag being read as its bytes go by, so parseTag() does not walk them again:
+    // the sum of its bytes for the checksum, where its first '=' is and how many '=' it has.
+    private int tagSum;
+    private int tagSeparator;
+    private int tagSeparators;
 
     // Tag 9: Number of bytes in message body.
     private int     bodyLength;
@@ -18,29 +70,32 @@ public class EngineFIX {
     // Tag 10: FIX Message Checksum.
     private int      checkSum;
 
-    // Tag 35: Identifies FIX message type.
-    private String  msgType;
-
+    // Tags 38 and 44 are decoded while parsing rather than by the view: a malformed quantity or price has to
+    // fail consume() with a TagFormatException, and checking it decodes it anyway. They are also indexed
+    // in the view, for code reading the message through it.
     // Tag 38: Order quantity for sale and buy.
     private int     orderQty;
 
     // Tag 44: Price per single unit.
     private int     price;
 
+    // Other tags are kept as offsets into rawData, and only decoded to a String when their getter is called:
+    // Tag 8: FIX protocol version.
+    // Tag 11: Identifier the broker gave to an order, echoed back by the market's answer.
+    // Tag 34: Sequence number of the message.
+    // Tag 35: Identifies FIX message type.
+    // Tag 40: Order type. (1 = Market, 2 = Limit)
     // Tag 49: Identifies entity sending the message.
-    private String senderCompID;
-
     // Tag 50: we will use this for the 6 digits ID.
-    private String   senderSubID;
-
+    // Tag 52: Time the message was sent, in UTC.
     // Tag 54: Side of order. (1 = Buy, 2 = Sell)
-    private String side;
-
     // Tag 55: This tag contains the Group Code for the instrument.
-    private String symbol;
-
     // Tag 56: Identifies entity receiving the message.
-    private String   targetCompID;
+    // Tag 59: How long an order stays active. (0 = Day, 1 = Good Till Cancel, 3 = Immediate Or Cancel, 4 = Fill Or Kill)
+    //         The market rests Day orders like Good Till Cancel ones. Without the tag a buy is Fill Or Kill
+    //         and a sell Good Till Cancel.
+    // Tag 112: Identifier of a test request, echoed back by the heartbeat answering it.
+    private final FixMessageView view;
 
     public int      asciiSum;
 
@@ -48,7 +103,9 @@ public class EngineFIX {
 
     private int bytesRead;
 
-    private String lastParsedTag;
+    // Bounds of the last parsed tag in rawData, only turned into a String to report errors.
+    private int lastParsedTagStart;
+    private int lastParsedTagEnd;
 
     private boolean valid;
 
@@ -57,15 +114,35 @@ public class EngineFIX {
         this.valid = true;
         this.complete = false;
         this.asciiSum = 0;
-        this.rawData = new ArrayList<>();
+        this.rawData = new byte[initialCapacity];
+        this.rawLength = 0;
+        this.tagStart = 0;
+        this.tagSeparator = -1;
+        this.view = new FixMessageView();
+        this.view.setBuffer(ByteBuffer.wrap(rawData));
+    }
+
+    public FixMessageView getView() {
+        return view;
     }
 
     public ArrayList<Byte> getRawData() {
-        return rawData;
+        ArrayList<Byte> bytes = new ArrayList<>(rawLength);
+        for (int i = 0; i < rawLength; i++)
+            bytes.add(rawData[i]);
+        return bytes;
+    }
+
+    public byte[] getRawBytes() {
+        return Arrays.copyOf(rawData, rawLength);
+    }
+
+    public int getRawLength() {
+        return rawLength;
     }
 
     public String getBeginString() {
-        return beginString;
+        return view.getString(8);
     }
 
     public int getBodyLength() {
@@ -73,7 +150,7 @@ public class EngineFIX {
     }
 
     public String getMsgType() {
-        return msgType;
+        return view.getMsgType();
     }
 
     public int getOrderQty() {
@@ -85,7 +162,7 @@ public class EngineFIX {
     }
 
     public String getSenderSubID() {
-        return senderSubID;
+        return view.getSenderSubID();
     }
 
     public int getCheckSum() {
@@ -101,11 +178,11 @@ public class EngineFIX {
     }
 
     public String getTargetCompID() {
-        return targetCompID;
+        return view.getTargetCompID();
     }
 
     public String getSenderCompID() {
-        return senderCompID;
+        return view.getSenderCompID();
     }
 
     public int getAsciiSum() {
@@ -113,11 +190,35 @@ public class EngineFIX {
     }
 
     public String getSymbol() {
-        return symbol;
+        return view.getSymbol();
     }
 
     public String getSide() {
-        return side;
+        return view.getSide();
+    }
+
+    public String getTestReqID() {
+        return view.getTestReqID();
+    }
+
+    public String getClOrdID() {
+        return view.getClOrdID();
+    }
+
+    public int getMsgSeqNum() {
+        return view.getMsgSeqNum();
+    }
+
+    public String getOrdType() {
+        return view.getOrdType();
+    }
+
+    public String getSendingTime() {
+        return view.getSendingTime();
+    }
+
+    public String getTimeInForce() {
+        return view.getTimeInForce();
     }
 
     public boolean isValid()
@@ -127,70 +228,99 @@ public class EngineFIX {
 
     public static String getFixBusinessRejectMessage(String uniqueId)
     {
-        String beginString = "8=" + supportedFixVersion + fixDelimiter;
+        return getFixBusinessRejectMessage(uniqueId, null);
+    }
 
+    // clOrdId is the order being rejected, null if the order did not carry one.
+    public static String getFixBusinessRejectMessage(String uniqueId, String clOrdId)
+    {
         // j = Business Level Reject. (case sensitive)
-        String msgType = "35=j" + fixDelimiter;
-
-        String senderSubID = "50=" + uniqueId + fixDelimiter;
-
-        int contentLength = msgType.length() + senderSubID.length();
-        String bodyLength = "9=" + contentLength + fixDelimiter;
-
-        int checksum = EngineFIX.calculateCheckSum(beginString + bodyLength + msgType + senderSubID) % 256;
-        String checksumStr = "10=" + checksum + fixDelimiter;
-        return beginString + bodyLength + senderSubID + msgType + checksumStr;
+        return buildMessage("50", String.valueOf(uniqueId), "35", "j", "11", clOrdId);
     }
 
     public static String getFixSessionRejectMessage()
     {
-        String beginString = "8=" + supportedFixVersion + fixDelimiter;
-
         // 3 = Session Level Reject. (case sensitive)
-        String msgType = "35=3" + fixDelimiter;
-
-        int contentLength = msgType.length();
-        String bodyLength = "9=" + contentLength + fixDelimiter;
-
-        int checksum = EngineFIX.calculateCheckSum(beginString + bodyLength + msgType) % 256;
-        String checksumStr = "10=" + checksum + fixDelimiter;
-        return beginString + bodyLength + msgType + checksumStr;
+        return buildMessage("35", "3");
     }
 
-
     public static String constructSuccessMessage(String uniqueId)
     {
-        String beginString = "8=" + supportedFixVersion + fixDelimiter;
+        return constructSuccessMessage(uniqueId, null);
+    }
 
+    // clOrdId is the order that went through, null if the order did not carry one.
+    public static String constructSuccessMessage(String uniqueId, String clOrdId)
+    {
         // s means Success. (case sensitive)
-        String msgType = "35=s" + fixDelimiter;
+        return buildMessage("50", String.valueOf(uniqueId), "35", "s", "11", clOrdId);
+    }
 
-        String senderSubID = "50=" + uniqueId + fixDelimiter;
+    public static String constructIdentificationMessage(String uniqueId, String name, String target)
+    {
+        // A means logon. (case sensitive)
+        return buildMessage("35", "A", "49", String.valueOf(name), "50", String.valueOf(uniqueId), "56", String.valueOf(target));
+    }
 
-        int contentLength = msgType.length() + senderSubID.length();
-        String bodyLength = "9=" + contentLength + fixDelimiter;
+    // testReqId is only set when the heartbeat answers a test request, null otherwise.
+    public static String constructHeartbeatMessage(String uniqueId, String testReqId)
+    {
+        // 0 means Heartbeat. (case sensitive)
+        return buildMessage("35", "0", "50", String.valueOf(uniqueId), "112", testReqId);
+    }
 
-        int checksum = EngineFIX.calculateCheckSum(beginString + bodyLength + msgType + senderSubID) % 256;
-        String checksumStr = "10=" + checksum + fixDelimiter;
-        return beginString + bodyLength + senderSubID + msgType + checksumStr;
+    public static String constructTestRequestMessage(String uniqueId, String testReqId)
+    {
+        // 1 means Test Request, answered with a heartbeat carrying the same 112. (case sensitive)
+        return buildMessage("35", "1", "50", String.valueOf(uniqueId), "112", String.valueOf(testReqId));
     }
 
-    public static String constructIdentificationMessage(String uniqueId, String name, String target)
+    // Writes the characters of value as bytes from offset on, returns the offset after them.
+    private static int put(byte[] message, int offset, String value)
     {
-        String beginString = "8=" + supportedFixVersion + fixDelimiter;
-        // A means logon. (case sensitive)
-        String msgType = "35=A" + fixDelimiter;
+        for (int i = 0; i < value.length(); i++)
+            message[offset++] = (byte) value.charAt(i);
+        return offset;
+    }
+
+    private static int putField(byte[] message, int offset, String tag, String value)
+    {
+        offset = put(message, offset, tag);
+        message[offset++] = '=';
+        offset = put(message, offset, value);
+        message[offset++] = fixDelimiter;
+        return offset;
+    }
 
-        String senderSubID = "50=" + uniqueId + fixDelimiter;
-        String senderCompID = "49=" + name + fixDelimiter;
-        String targetCompID = "56=" + target + fixDelimiter;
+    // Builds a message from its body fields, given as tag and value pairs in the order they are written,
+    // a field whose value is null is left out. BodyLength is known from the lengths of the fields, the
+    // message is written once into a byte array and CheckSum is summed over it, without concatenating
+    // the fields again just to measure and sum them.
+    private static String buildMessage(String... fields)
+    {
+        int bodyLength = 0;
+        for (int i = 0; i < fields.length; i += 2)
+        {
+            if (fields[i + 1] != null)
+                bodyLength += fields[i].length() + fields[i + 1].length() + 2;
+        }
+        String bodyLengthValue = Integer.toString(bodyLength);
 
-        int contentLength = msgType.length() + senderSubID.length() + senderCompID.length() + targetCompID.length();
-        String bodyLength = "9=" + contentLength + fixDelimiter;
+        // 8=, 9= and 10= fields, the checksum has at most 3 digits.
+        byte[] message = new byte[bodyLength + supportedFixVersion.length() + bodyLengthValue.length() + 13];
+        int length = putField(message, 0, "8", supportedFixVersion);
+        length = putField(message, length, "9", bodyLengthValue);
+        for (int i = 0; i < fields.length; i += 2)
+        {
+            if (fields[i + 1] != null)
+                length = putField(message, length, fields[i], fields[i + 1]);
+        }
 
-        int checksum = EngineFIX.calculateCheckSum(beginString + bodyLength + msgType + senderCompID + senderSubID + targetCompID) % 256;
-        String checksumStr = "10=" + checksum + fixDelimiter;
-        return beginString + bodyLength + msgType + senderCompID + senderSubID + targetCompID + checksumStr;
+        int checkSum = 0;
+        for (int i = 0; i < length; i++)
+            checkSum += message[i] & 0xFF;
+        length = putField(message, length, "10", Integer.toString(checkSum % 256));
+        return new String(message, 0, length, StandardCharsets.ISO_8859_1);
     }
 
     // Note: this method does not calculate the 0x1 (SOH) character.
@@ -222,112 +352,178 @@ public class EngineFIX {
         return list.toArray(new Byte[0]);
     }
 
-    private void parseTag(String tag) throws UnsupportedTagException, TagFormatException {
-        String[] ar = tag.split("=");
-        if (ar.length == 2)
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > rawData.length)
         {
-            lastParsedTag = ar[0] + "=" + ar[1];
-            if (ar[0].compareTo("10") == 0)
-            {
-                this.checkSum = Integer.parseInt(ar[1]);
-                this.complete = true;
-            }
-            else if (ar[0].compareTo("8") == 0)
-            {
-                this.beginString = ar[1];
-            }
-            else if (ar[0].compareTo("9") == 0)
-            {
-                this.bodyLength = Integer.parseInt(ar[1]);
-            }
-            else if (ar[0].compareTo("35") == 0)
-            {
-                // 2 bytes for the "=" and 0x1 (SOH) characters.
-                this.bytesRead += ar[0].length() + ar[1].length() + 2;
-                this.msgType = ar[1];
-            }
-            else if (ar[0].compareTo("38") == 0)
-            {
-                // 2 bytes for the "=" and 0x1 (SOH) characters.
-                this.bytesRead += ar[0].length() + ar[1].length() + 2;
-                this.orderQty = Integer.parseInt(ar[1]);
-            }
-            else if (ar[0].compareTo("44") == 0)
-            {
-                // 2 bytes for the "=" and 0x1 (SOH) characters.
-                this.bytesRead += ar[0].length() + ar[1].length() + 2;
-                this.price = Integer.parseInt(ar[1]);
-            }
-            else if (ar[0].compareTo("49") == 0)
-            {
-                // 2 bytes for the "=" and 0x1 (SOH) characters.
-                this.bytesRead += ar[0].length() + ar[1].length() + 2;
-                this.senderCompID = ar[1];
-            }
-            else if (ar[0].compareTo("50") == 0)
-            {
-                // 2 bytes for the "=" and 0x1 (SOH) characters.
-                this.bytesRead += ar[0].length() + ar[1].length() + 2;
-                this.senderSubID = ar[1];
-            }
-            else if (ar[0].compareTo("54") == 0)
-            {
-                this.bytesRead += ar[0].length() + ar[1].length() + 2;
-                this.side = ar[1];
-            }
-            else if (ar[0].compareTo("55") == 0)
-            {
-                this.bytesRead += ar[0].length() + ar[1].length() + 2;
-                this.symbol = ar[1];
-            }
-            else if (ar[0].compareTo("56") == 0)
-            {
-                this.bytesRead += ar[0].length() + ar[1].length() + 2;
-                this.targetCompID = ar[1];
-            }
-            else
-            {
-                valid = false;
-                throw new UnsupportedTagException(lastParsedTag);
-            }
+            rawData = Arrays.copyOf(rawData, Math.max(capacity, rawData.length * 2));
+            view.setBuffer(ByteBuffer.wrap(rawData));
+        }
+    }
 
-            // calculate Sum.
-            if (ar[0].compareTo("10") != 0)
-            {
-                if (this.asciiSum == -1)
-                    this.asciiSum = 0;
-                this.asciiSum += EngineFIX.calculateCheckSum(ar[0] + "=" + ar[1]);
-                this.asciiSum += 0x1;
-            }
-        } else
+    private String decode(int start, int end)
+    {
+        return new String(rawData, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private String lastParsedTag()
+    {
+        return decode(lastParsedTagStart, lastParsedTagEnd);
+    }
+
+    // Returns -1 if the tag is not a plain decimal number, "08" is not the same tag as "8".
+    private int parseTagNumber(int start, int end)
+    {
+        int length = end - start;
+        if (length == 0 || length > 9 || (rawData[start] == '0' && length > 1))
+            return -1;
+        int number = 0;
+        for (int i = start; i < end; i++)
         {
-            lastParsedTag = ar[0];
-            valid = false;
-            throw new TagFormatException(lastParsedTag);
+            byte b = rawData[i];
+            if (b < '0' || b > '9')
+                return -1;
+            number = number * 10 + (b - '0');
         }
+        return number;
     }
 
-    public void consume(Byte[] data) throws UnsupportedTagException, TagFormatException, BadTagValueException {
-        ArrayList<Byte> bytes = new ArrayList<>();
+    // Same rules as Integer.parseInt, without building a String first.
+    private int parseIntValue(int start, int end)
+    {
+        boolean negative = false;
+        int i = start;
+        if (i < end && (rawData[i] == '-' || rawData[i] == '+'))
+        {
+            negative = rawData[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 10)
+            throw new NumberFormatException();
+        long value = 0;
+        for (; i < end; i++)
+        {
+            byte b = rawData[i];
+            if (b < '0' || b > '9')
+                throw new NumberFormatException();
+            value = value * 10 + (b - '0');
+        }
+        if (negative)
+            value = -value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new NumberFormatException();
+        return (int) value;
+    }
+
+    // Parses the tag stored in rawData between start and end (delimiter excluded).
+    private void parseTag(int start, int end) throws UnsupportedTagException, TagFormatException {
+        int separators = tagSeparators;
+        int sum = tagSum;
+
+        // Trailing '=' characters are ignored, like String.split does.
+        while (end > start && rawData[end - 1] == '=')
+        {
+            end--;
+            separators--;
+            sum -= '=';
+        }
+        int separator = (tagSeparator < end) ? tagSeparator : -1;
+
+        lastParsedTagStart = start;
+        if (separators != 1)
+        {
+            lastParsedTagEnd = (separator == -1) ? end : separator;
+            valid = false;
+            throw new TagFormatException(lastParsedTag());
+        }
+        lastParsedTagEnd = end;
+
+        int valueStart = separator + 1;
+        // 1 byte for the 0x1 (SOH) character.
+        int tagLength = end - start + 1;
+
+        int tag = parseTagNumber(start, separator);
+        byte handler = (tag >= 0 && tag < tagHandlers.length) ? tagHandlers[tag] : unsupportedTag;
+        switch (handler)
+        {
+            case checkSumTag:
+                this.checkSum = parseIntValue(valueStart, end);
+                this.complete = true;
+                return ;
+            case bodyLengthTag:
+                this.bodyLength = parseIntValue(valueStart, end);
+                break ;
+            case orderQtyTag:
+                this.bytesRead += tagLength;
+                this.orderQty = parseIntValue(valueStart, end);
+                view.set(tag, valueStart, end - valueStart);
+                break ;
+            case priceTag:
+                this.bytesRead += tagLength;
+                this.price = parseIntValue(valueStart, end);
+                view.set(tag, valueStart, end - valueStart);
+                break ;
+            case headerTag:
+                view.set(tag, valueStart, end - valueStart);
+                break ;
+            case bodyTag:
+                this.bytesRead += tagLength;
+                view.set(tag, valueStart, end - valueStart);
+                break ;
+            default:
+                valid = false;
+                throw new UnsupportedTagException(lastParsedTag());
+        }
+
+        // calculate Sum.
+        if (this.asciiSum == -1)
+            this.asciiSum = 0;
+        this.asciiSum += sum;
+        this.asciiSum += 0x1;
+    }
 
+    // Parses every complete tag between tagStart and the end of rawData, up to the checksum.
+    // Bytes after the checksum belong to the next message, they are dropped from rawData
+    // and the number of bytes from 'from' that were kept is returned.
+    private int scan(int from) throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        if (isComplete())
+        {
+            rawLength = from;
+            return 0;
+        }
         try {
-            for (Byte mbyte : data)
+            for (int i = from; i < rawLength; i++)
             {
-                rawData.add(mbyte);
+                byte b = rawData[i];
                 // 0x1 is the SOH character.
-                if (mbyte == 0x1 || mbyte == '\n')
+                if (b == fixDelimiter || b == '\n')
+                {
+                    parseTag(tagStart, i);
+                    tagStart = i + 1;
+                    tagSum = 0;
+                    tagSeparator = -1;
+                    tagSeparators = 0;
+                    if (isComplete())
+                    {
+                        rawLength = tagStart;
+                        break ;
+                    }
+                }
+                else
                 {
-                    byte[] byteArray = toPrimitiveArray(bytes);
-                    parseTag(new String(byteArray));
-                    bytes.clear();
-                    continue ;
+                    tagSum += b & 0xFF;
+                    if (b == '=')
+                    {
+                        if (tagSeparator == -1)
+                            tagSeparator = i;
+                        tagSeparators++;
+                    }
                 }
-                bytes.add(mbyte);
             }
         } catch (NumberFormatException e)
         {
             valid = false;
-            throw new TagFormatException(lastParsedTag);
+            throw new TagFormatException(lastParsedTag());
         }
 
         if (isComplete())
@@ -343,19 +539,90 @@ public class EngineFIX {
                 throw new BadTagValueException("10=" + getCheckSum());
             }
         }
+        return rawLength - from;
+    }
+
+    // The consume methods stop at the end of the message: they return how many bytes were used,
+    // whatever is left is the start of the next message, to be consumed once the parser is reset.
+    public int consume(byte[] data, int offset, int length) throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        int from = rawLength;
+        ensureCapacity(rawLength + length);
+        System.arraycopy(data, offset, rawData, rawLength, length);
+        rawLength += length;
+        return scan(from);
+    }
+
+    // Consumes the remaining bytes of the buffer, works with both heap and direct buffers.
+    // The buffer is left positioned right after the message.
+    public int consume(ByteBuffer data) throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        int from = rawLength;
+        int start = data.position();
+        int length = data.remaining();
+        ensureCapacity(rawLength + length);
+        data.get(rawData, rawLength, length);
+        rawLength += length;
+        int consumed = length;
+        try {
+            consumed = scan(from);
+        } finally {
+            data.position(start + consumed);
+        }
+        return consumed;
+    }
+
+    public int consume(Byte[] data) throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        int from = rawLength;
+        ensureCapacity(rawLength + data.length);
+        for (Byte mbyte : data)
+            rawData[rawLength++] = mbyte;
+        return scan(from);
+    }
+
+    // Makes the parser ready for a new message while keeping its buffer.
+    public void reset()
+    {
+        this.rawLength = 0;
+        this.tagStart = 0;
+        this.tagSum = 0;
+        this.tagSeparator = -1;
+        this.tagSeparators = 0;
+        this.view.clear();
+        this.bodyLength = 0;
+        this.checkSum = 0;
+        this.orderQty = 0;
+        this.price = 0;
+        this.asciiSum = 0;
+        this.complete = false;
+        this.bytesRead = 0;
+        this.valid = true;
     }
 
     public boolean isBusinessReject()
     {
-        return (this.msgType != null && this.msgType.compareTo("j") == 0);
+        return view.valueEquals(35, 'j');
     }
 
     public boolean isSessionReject() {
-        return (this.msgType != null && this.msgType.compareTo("3") == 0);
+        return view.valueEquals(35, '3');
     }
 
     public boolean isSuccess()
     {
-        return (this.msgType != null && this.msgType.compareTo("s") == 0);
+        return view.valueEquals(35, 's');
+    }
+
+    public boolean isLogon()
+    {
+        return view.valueEquals(35, 'A');
+    }
+
+    public boolean isHeartbeat()
+    {
+        return view.valueEquals(35, '0');
+    }
+
+    public boolean isTestRequest()
+    {
+        return view.valueEquals(35, '1');
     }
 }
@@ -0,0 +1,213 @@
+package engineFIX;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Writes FIX messages into a buffer supplied by the caller, heap or direct, without building a String:
+// tag prefixes are precomputed, integers are formatted in place, and BodyLength and CheckSum are filled
+// in once the body is written. The message is put together in a byte array the encoder keeps and reuses,
+// the body first and the header right in front of it once BodyLength is known, then copied to the buffer
+// in one go. An encoder is reused for message after message, one at a time:
+//     encoder.begin(buffer, 's').field(50, uniqueId).field(11, parser.getView(), 11).end();
+public class FixEncoder {
+    private static final String supportedFixVersion = "FIX.4.4";
+    private static final byte fixDelimiter = 0x1; // (SOH) character.
+    private static final byte[] beginString = ("8=" + supportedFixVersion + (char) fixDelimiter).getBytes(StandardCharsets.ISO_8859_1);
+    private static final int initialCapacity = 256;
+
+    // BodyLength can take up to FixFramer.maxBodyLength, room is kept in front of the body for the longest header.
+    private static final int bodyLengthDigits = 5;
+    private static final int headerRoom = beginString.length + 2 + bodyLengthDigits + 1;
+
+    // "tag=" for every tag the view knows of, and the sum of its bytes for CheckSum, FixTemplate uses them too.
+    static final byte[][] tagPrefixes = new byte[FixMessageView.maxTag + 1][];
+    static final int[] tagPrefixSums = new int[FixMessageView.maxTag + 1];
+    private static final int beginStringSum;
+
+    static {
+        for (int tag = 0; tag <= FixMessageView.maxTag; tag++)
+        {
+            tagPrefixes[tag] = (tag + "=").getBytes(StandardCharsets.ISO_8859_1);
+            tagPrefixSums[tag] = sum(tagPrefixes[tag], 0, tagPrefixes[tag].length);
+        }
+        beginStringSum = sum(beginString, 0, beginString.length);
+    }
+
+    private ByteBuffer buffer;
+
+    // The message being encoded, its body starts at headerRoom and the next byte goes at position.
+    private byte[] bytes;
+    private int position;
+
+    // Sum of the bytes written so far, CheckSum is this modulo 256.
+    private int checkSum;
+
+    public FixEncoder()
+    {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    // Starts a message that will be written at the position of the buffer, with its 35 field.
+    public FixEncoder begin(ByteBuffer buffer, char msgType)
+    {
+        this.buffer = buffer;
+        this.position = headerRoom;
+        this.checkSum = 0;
+        return field(35, msgType);
+    }
+
+    public FixEncoder field(int tag, CharSequence value)
+    {
+        prefix(tag);
+        int length = value.length();
+        ensureCapacity(length);
+        // Values are ASCII, each char is written as its low byte.
+        for (int i = 0; i < length; i++)
+            bytes[position + i] = (byte) value.charAt(i);
+        checkSum += sum(bytes, position, position + length);
+        position += length;
+        put(fixDelimiter);
+        return this;
+    }
+
+    public FixEncoder field(int tag, char value)
+    {
+        prefix(tag);
+        put((byte) value);
+        put(fixDelimiter);
+        return this;
+    }
+
+    public FixEncoder field(int tag, long value)
+    {
+        prefix(tag);
+        putLong(value, 0);
+        put(fixDelimiter);
+        return this;
+    }
+
+    // Copies the value of sourceTag from a parsed message as is, nothing is written if the message has none.
+    public FixEncoder field(int tag, FixMessageView view, int sourceTag)
+    {
+        if (!view.has(sourceTag))
+            return this;
+        prefix(tag);
+        int offset = view.getOffset(sourceTag);
+        int length = view.getLength(sourceTag);
+        for (int i = 0; i < length; i++)
+            put(view.byteAt(offset + i));
+        put(fixDelimiter);
+        return this;
+    }
+
+    // Writes the header in front of the body and CheckSum after it, then copies the message to the buffer,
+    // which is left positioned after it. Returns the length of the message.
+    public int end()
+    {
+        int bodyLength = position - headerRoom;
+        int digits = countDigits(bodyLength);
+        if (digits > bodyLengthDigits)
+            throw new IllegalStateException("Body of " + bodyLength + " bytes is too long");
+
+        int bodyEnd = position;
+        int start = headerRoom - (beginString.length + 2 + digits + 1);
+        position = start;
+        put(beginString, beginStringSum);
+        prefix(9);
+        putLong(bodyLength, 0);
+        put(fixDelimiter);
+        position = bodyEnd;
+
+        // Three digits, as the standard wants, the parser also reads them without the leading zeros.
+        int sum = checkSum % 256;
+        prefix(10);
+        putLong(sum, 3);
+        put(fixDelimiter);
+
+        int length = position - start;
+        if (buffer.remaining() < length)
+            throw new BufferOverflowException();
+        buffer.put(bytes, start, length);
+        return length;
+    }
+
+    private void prefix(int tag)
+    {
+        if (tag >= 0 && tag < tagPrefixes.length)
+            put(tagPrefixes[tag], tagPrefixSums[tag]);
+        else
+        {
+            putLong(tag, 0);
+            put((byte) '=');
+        }
+    }
+
+    private void ensureCapacity(int length)
+    {
+        if (position + length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(position + length, bytes.length * 2));
+    }
+
+    static int sum(byte[] data, int start, int end)
+    {
+        int sum = 0;
+        for (int i = start; i < end; i++)
+            sum += data[i] & 0xFF;
+        return sum;
+    }
+
+    private void put(byte b)
+    {
+        if (position == bytes.length)
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        bytes[position++] = b;
+        checkSum += b & 0xFF;
+    }
+
+    // Copies bytes whose sum is already known.
+    private void put(byte[] data, int sum)
+    {
+        ensureCapacity(data.length);
+        System.arraycopy(data, 0, bytes, position, data.length);
+        position += data.length;
+        checkSum += sum;
+    }
+
+    private static int countDigits(long value)
+    {
+        int digits = 1;
+        while (value >= 10)
+        {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    // Writes the decimal digits of value, left padded with zeros to minDigits.
+    private void putLong(long value, int minDigits)
+    {
+        if (value < 0)
+        {
+            put((byte) '-');
+            // Long.MIN_VALUE has no positive counterpart, its last digit is written on its own.
+            if (value == Long.MIN_VALUE)
+            {
+                putLong(-(value / 10), 0);
+                put((byte) '8');
+                return ;
+            }
+            value = -value;
+        }
+        int digits = countDigits(value);
+        for (int i = digits; i < minDigits; i++)
+            put((byte) '0');
+        long divisor = 1;
+        for (int i = 1; i < digits; i++)
+            divisor *= 10;
+        for (; divisor > 0; divisor /= 10)
+            put((byte) ('0' + (value / divisor) % 10));
+    }
+}
@@ -0,0 +1,169 @@
+package engineFIX;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Splits a byte stream into FIX messages using tag 9 (BodyLength): a message is the 8 and 9 fields,
+// BodyLength bytes of body, then the 10 field. The end of a message is found without parsing its body,
+// so a read holding several messages is split in one pass, and a message cut short by the end of a read
+// is kept until the following reads complete it.
+public class FixFramer {
+    private static final char fixDelimiter = 0x1; // (SOH) character.
+    private static final int initialCapacity = 1024;
+
+    // A BodyLength above this is taken for garbage rather than waited for.
+    public static final int maxBodyLength = 64 * 1024;
+
+    // The 8 field and the value of the 10 field are short, a longer one means the stream is not FIX.
+    private static final int maxFieldLength = 16;
+
+    // Bytes received and not handed out yet are between start and end.
+    private byte[] buffer;
+    private ByteBuffer wrapped;
+    private int start;
+    private int end;
+
+    // Bounds of the message returned by the last call to next().
+    private int messageOffset;
+    private int messageLength;
+
+    public FixFramer()
+    {
+        this.buffer = new byte[initialCapacity];
+        this.wrapped = ByteBuffer.wrap(buffer);
+        this.start = 0;
+        this.end = 0;
+    }
+
+    public void consume(byte[] data, int offset, int length)
+    {
+        // Messages already handed out are dropped, the tail is moved to the front.
+        if (start > 0)
+        {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end + length > buffer.length)
+        {
+            buffer = Arrays.copyOf(buffer, Math.max(end + length, buffer.length * 2));
+            wrapped = ByteBuffer.wrap(buffer);
+        }
+        System.arraycopy(data, offset, buffer, end, length);
+        end += length;
+    }
+
+    // Moves to the next complete message, returns false if the bytes left do not hold one yet.
+    // The message stays in getBuffer() between getOffset() and getOffset() + getLength() until the next consume.
+    public boolean next() throws TagFormatException, BadTagValueException {
+        int length = messageLength(wrapped, start, end);
+        if (length < 0)
+            return false;
+        messageOffset = start;
+        messageLength = length;
+        start += length;
+        return true;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return messageOffset;
+    }
+
+    public int getLength() {
+        return messageLength;
+    }
+
+    // Bytes of a message that is not complete yet.
+    public int getBuffered() {
+        return end - start;
+    }
+
+    public void clear()
+    {
+        this.start = 0;
+        this.end = 0;
+        this.messageOffset = 0;
+        this.messageLength = 0;
+    }
+
+    private static boolean isDelimiter(byte b)
+    {
+        // Same delimiters as EngineFIX.
+        return b == fixDelimiter || b == '\n';
+    }
+
+    private static String decode(ByteBuffer data, int from, int to)
+    {
+        byte[] bytes = new byte[to - from];
+        data.get(from, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    // Offset of the delimiter ending the field that starts at from, -1 if it is not in the bytes yet.
+    private static int fieldEnd(ByteBuffer data, int from, int end) throws TagFormatException {
+        for (int i = from; i < end; i++)
+        {
+            if (isDelimiter(data.get(i)))
+                return i;
+            if (i - from > maxFieldLength)
+                throw new TagFormatException(decode(data, from, i));
+        }
+        return -1;
+    }
+
+    private static void expectTag(ByteBuffer data, int from, int end, String tag) throws TagFormatException {
+        for (int i = 0; i < tag.length() && from + i < end; i++)
+        {
+            if (data.get(from + i) != tag.charAt(i))
+                throw new TagFormatException(decode(data, from, Math.min(end, from + tag.length())));
+        }
+    }
+
+    // Length of the message starting at offset, -1 if the bytes up to end do not hold all of it yet.
+    // Works on absolute positions, the position and limit of the buffer are left alone.
+    public static int messageLength(ByteBuffer data, int offset, int end) throws TagFormatException, BadTagValueException {
+        // 8=BeginString
+        expectTag(data, offset, end, "8=");
+        int beginStringEnd = fieldEnd(data, offset, end);
+        if (beginStringEnd < 0)
+            return -1;
+
+        // 9=BodyLength
+        int bodyLengthStart = beginStringEnd + 1;
+        expectTag(data, bodyLengthStart, end, "9=");
+        int bodyLengthEnd = fieldEnd(data, bodyLengthStart, end);
+        if (bodyLengthEnd < 0)
+            return -1;
+        long bodyLength = 0;
+        for (int i = bodyLengthStart + 2; i < bodyLengthEnd; i++)
+        {
+            byte b = data.get(i);
+            if (b < '0' || b > '9')
+                throw new TagFormatException(decode(data, bodyLengthStart, bodyLengthEnd));
+            bodyLength = bodyLength * 10 + (b - '0');
+            if (bodyLength > maxBodyLength)
+                throw new BadTagValueException(decode(data, bodyLengthStart, bodyLengthEnd));
+        }
+        if (bodyLengthEnd == bodyLengthStart + 2)
+            throw new TagFormatException(decode(data, bodyLengthStart, bodyLengthEnd));
+
+        // The body, then 10=CheckSum right where BodyLength says it ends.
+        int checkSumStart = bodyLengthEnd + 1 + (int) bodyLength;
+        if (checkSumStart >= end)
+            return -1;
+        for (int i = 0; i < 3 && checkSumStart + i < end; i++)
+        {
+            if (data.get(checkSumStart + i) != "10=".charAt(i))
+                throw new BadTagValueException(decode(data, bodyLengthStart, bodyLengthEnd));
+        }
+        int checkSumEnd = fieldEnd(data, checkSumStart, end);
+        if (checkSumEnd < 0)
+            return -1;
+        return checkSumEnd + 1 - offset;
+    }
+}
@@ -0,0 +1,258 @@
+package engineFIX;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Flyweight over a buffer holding a FIX message: it only remembers where each tag value starts
+// and how long it is, values are decoded the first time a getter asks for them.
+// A view is meant to be reused, wrap() or clear() it for every new message.
+public class FixMessageView {
+    private static final char fixDelimiter = 0x1; // (SOH) character.
+
+    // Highest tag number the view keeps track of, tags above it are skipped.
+    public static final int maxTag = 127;
+
+    private ByteBuffer buffer;
+
+    // Offset and length of each tag value in buffer, offset is -1 when the tag is absent.
+    private final int[] offsets;
+    private final int[] lengths;
+
+    // Values already decoded to a String, so a getter called twice does not decode twice.
+    private final String[] decoded;
+
+    // Tags set since the last clear, so clearing does not walk the whole table.
+    private final int[] presentTags;
+    private int presentCount;
+
+    public FixMessageView()
+    {
+        this.offsets = new int[maxTag + 1];
+        this.lengths = new int[maxTag + 1];
+        this.decoded = new String[maxTag + 1];
+        this.presentTags = new int[maxTag + 1];
+        this.presentCount = 0;
+        Arrays.fill(this.offsets, -1);
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < presentCount; i++)
+        {
+            int tag = presentTags[i];
+            offsets[tag] = -1;
+            decoded[tag] = null;
+        }
+        presentCount = 0;
+    }
+
+    // Points the view at a buffer without indexing anything, offsets are then recorded with set().
+    void setBuffer(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    void set(int tag, int offset, int length)
+    {
+        if (tag < 0 || tag > maxTag)
+            return ;
+        if (offsets[tag] == -1)
+            presentTags[presentCount++] = tag;
+        offsets[tag] = offset;
+        lengths[tag] = length;
+        decoded[tag] = null;
+    }
+
+    // Indexes the message stored in buffer between offset and offset + length.
+    // Malformed tags are skipped, validation is the job of EngineFIX.
+    public FixMessageView wrap(ByteBuffer buffer, int offset, int length)
+    {
+        clear();
+        this.buffer = buffer;
+
+        int end = offset + length;
+        int tagStart = offset;
+        int tag = 0;
+        int valueStart = -1;
+        for (int i = offset; i < end; i++)
+        {
+            byte b = buffer.get(i);
+            if (b == fixDelimiter)
+            {
+                if (valueStart != -1)
+                    set(tag, valueStart, i - valueStart);
+                tagStart = i + 1;
+                tag = 0;
+                valueStart = -1;
+            }
+            else if (valueStart == -1)
+            {
+                if (b == '=' && i > tagStart)
+                    valueStart = i + 1;
+                else if (b >= '0' && b <= '9' && tag <= maxTag)
+                    tag = tag * 10 + (b - '0');
+                else
+                    tag = maxTag + 1;
+            }
+        }
+        return this;
+    }
+
+    public FixMessageView wrap(byte[] data, int offset, int length)
+    {
+        return wrap(ByteBuffer.wrap(data), offset, length);
+    }
+
+    public boolean has(int tag)
+    {
+        return tag >= 0 && tag <= maxTag && offsets[tag] != -1;
+    }
+
+    public int getOffset(int tag)
+    {
+        return has(tag) ? offsets[tag] : -1;
+    }
+
+    public int getLength(int tag)
+    {
+        return has(tag) ? lengths[tag] : 0;
+    }
+
+    // Raw byte of the buffer, for the encoder to copy a value without decoding it.
+    byte byteAt(int index)
+    {
+        return buffer.get(index);
+    }
+
+    public String getString(int tag)
+    {
+        if (!has(tag))
+            return null;
+        if (decoded[tag] == null)
+        {
+            byte[] bytes = new byte[lengths[tag]];
+            buffer.get(offsets[tag], bytes);
+            decoded[tag] = new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        return decoded[tag];
+    }
+
+    // Returns 0 when the tag is absent, like the EngineFIX getters. Same rules as Integer.parseInt otherwise,
+    // a value out of the range of an int is a NumberFormatException.
+    public int getInt(int tag)
+    {
+        return has(tag) ? (int) parseLong(tag, Integer.MIN_VALUE, Integer.MAX_VALUE) : 0;
+    }
+
+    // Same as getInt for the values that can outgrow an int, like ClOrdIDs.
+    public long getLong(int tag)
+    {
+        return has(tag) ? parseLong(tag, Long.MIN_VALUE, Long.MAX_VALUE) : 0;
+    }
+
+    // Digits are taken away from zero, like Long.parseLong does, since min is one further from it than max.
+    private long parseLong(int tag, long min, long max)
+    {
+        int offset = offsets[tag];
+        int end = offset + lengths[tag];
+        boolean negative = false;
+        if (offset < end && (buffer.get(offset) == '-' || buffer.get(offset) == '+'))
+        {
+            negative = buffer.get(offset) == '-';
+            offset++;
+        }
+        if (offset == end)
+            throw new NumberFormatException();
+        long limit = negative ? min : -max;
+        long value = 0;
+        for (int i = offset; i < end; i++)
+        {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9')
+                throw new NumberFormatException();
+            if (value < limit / 10)
+                throw new NumberFormatException();
+            value *= 10;
+            if (value < limit + (b - '0'))
+                throw new NumberFormatException();
+            value -= b - '0';
+        }
+        return negative ? value : -value;
+    }
+
+    // Compares a tag value without decoding it.
+    public boolean valueEquals(int tag, String value)
+    {
+        if (!has(tag) || value == null || value.length() != lengths[tag])
+            return false;
+        int offset = offsets[tag];
+        for (int i = 0; i < lengths[tag]; i++)
+        {
+            if ((buffer.get(offset + i) & 0xFF) != value.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    public boolean valueEquals(int tag, char value)
+    {
+        return has(tag) && lengths[tag] == 1 && (buffer.get(offsets[tag]) & 0xFF) == value;
+    }
+
+    public String getClOrdID() {
+        return getString(11);
+    }
+
+    public int getMsgSeqNum() {
+        return getInt(34);
+    }
+
+    public String getOrdType() {
+        return getString(40);
+    }
+
+    public String getSendingTime() {
+        return getString(52);
+    }
+
+    public String getTimeInForce() {
+        return getString(59);
+    }
+
+    public String getMsgType() {
+        return getString(35);
+    }
+
+    public int getOrderQty() {
+        return getInt(38);
+    }
+
+    public int getPrice() {
+        return getInt(44);
+    }
+
+    public String getSenderCompID() {
+        return getString(49);
+    }
+
+    public String getSenderSubID() {
+        return getString(50);
+    }
+
+    public String getSide() {
+        return getString(54);
+    }
+
+    public String getSymbol() {
+        return getString(55);
+    }
+
+    public String getTargetCompID() {
+        return getString(56);
+    }
+
+    public String getTestReqID() {
+        return getString(112);
+    }
+}
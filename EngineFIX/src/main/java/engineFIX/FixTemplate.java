@@ -0,0 +1,116 @@
+package engineFIX;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// A message that is the same every time but for the unique id, encoded once: the 35 field, then a slot
+// of fixed length for the value of slotTag. The bytes around the slot and their sum are computed up front,
+// writing the message is a copy of them with the id in the slot, an optional field copied from a parsed
+// message, and CheckSum fixed up from the precomputed sum. Templates are read only once built, one can be
+// shared by every thread:
+//     successTemplate.write(buffer, uniqueId, parser.getView(), 11);
+public class FixTemplate {
+    private static final byte fixDelimiter = 0x1; // (SOH) character.
+    private static final byte[] head = "8=FIX.4.4\u00019=".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int headSum = FixEncoder.sum(head, 0, head.length);
+
+    // "35=msgType|slotTag=" then slotLength bytes of slot and a delimiter, bodySum leaves the slot out.
+    private final byte[] body;
+    private final int bodySum;
+    private final int slotOffset;
+    private final int slotLength;
+
+    // A message without any field but 35, a session reject for one.
+    public FixTemplate(char msgType)
+    {
+        this(msgType, 0, 0);
+    }
+
+    public FixTemplate(char msgType, int slotTag, int slotLength)
+    {
+        String fields = "35=" + msgType + (char) fixDelimiter;
+        if (slotLength > 0)
+            fields += slotTag + "=" + "0".repeat(slotLength) + (char) fixDelimiter;
+        this.body = fields.getBytes(StandardCharsets.ISO_8859_1);
+        this.slotLength = slotLength;
+        this.slotOffset = slotLength > 0 ? body.length - slotLength - 1 : body.length;
+        this.bodySum = FixEncoder.sum(body, 0, slotOffset) + (slotLength > 0 ? fixDelimiter : 0);
+    }
+
+    public int write(ByteBuffer buffer)
+    {
+        return write(buffer, null, null, 0);
+    }
+
+    public int write(ByteBuffer buffer, CharSequence slotValue)
+    {
+        return write(buffer, slotValue, null, 0);
+    }
+
+    // Writes the message at the position of the buffer with slotValue in the slot, followed by the value of
+    // tag in view, if it has one. The buffer is left positioned after the message, its length is returned.
+    public int write(ByteBuffer buffer, CharSequence slotValue, FixMessageView view, int tag)
+    {
+        int slotValueLength = slotValue == null ? 0 : slotValue.length();
+        if (slotValueLength != slotLength)
+            throw new IllegalArgumentException("Expected a value of " + slotLength + " characters, got " + slotValueLength);
+
+        boolean copied = view != null && view.has(tag);
+        byte[] tagPrefix = copied ? FixEncoder.tagPrefixes[tag] : null;
+        int copiedLength = copied ? view.getLength(tag) : 0;
+
+        int bodyLength = body.length + (copied ? tagPrefix.length + copiedLength + 1 : 0);
+        int bodyLengthDivisor = 1;
+        int bodyLengthDigits = 1;
+        for (; bodyLengthDivisor * 10 <= bodyLength; bodyLengthDivisor *= 10)
+            bodyLengthDigits++;
+        int length = head.length + bodyLengthDigits + 1 + bodyLength + 7;
+        if (buffer.remaining() < length)
+            throw new BufferOverflowException();
+        int start = buffer.position();
+
+        // 8=FIX.4.4|9=BodyLength|
+        buffer.put(head);
+        int sum = headSum + fixDelimiter;
+        for (int divisor = bodyLengthDivisor; divisor > 0; divisor /= 10)
+            sum += put(buffer, '0' + (bodyLength / divisor) % 10);
+        buffer.put(fixDelimiter);
+
+        // The template, then the id over the slot.
+        int bodyStart = buffer.position();
+        buffer.put(body);
+        sum += bodySum;
+        for (int i = 0; i < slotLength; i++)
+        {
+            byte b = (byte) slotValue.charAt(i);
+            buffer.put(bodyStart + slotOffset + i, b);
+            sum += b & 0xFF;
+        }
+
+        if (copied)
+        {
+            buffer.put(tagPrefix);
+            sum += FixEncoder.tagPrefixSums[tag];
+            int offset = view.getOffset(tag);
+            for (int i = 0; i < copiedLength; i++)
+                sum += put(buffer, view.byteAt(offset + i));
+            sum += put(buffer, fixDelimiter);
+        }
+
+        // 10=CheckSum| with three digits.
+        sum %= 256;
+        buffer.put(FixEncoder.tagPrefixes[10]);
+        put(buffer, '0' + sum / 100);
+        put(buffer, '0' + sum / 10 % 10);
+        put(buffer, '0' + sum % 10);
+        buffer.put(fixDelimiter);
+        return buffer.position() - start;
+    }
+
+    private static int put(ByteBuffer buffer, int b)
+    {
+        buffer.put((byte) b);
+        return b & 0xFF;
+    }
+}
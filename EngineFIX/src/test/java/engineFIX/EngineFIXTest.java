@@ -3,6 +3,8 @@ package engineFIX;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+
 import static org.junit.Assert.assertEquals;
 
 
@@ -378,4 +380,160 @@ public class EngineFIXTest {
         assertEquals(expectedBytesRead, parser.getBytesRead());
         Assert.assertTrue(parser.isComplete());
     }
+
+    @Test
+    public void testTestRequestAnsweredByHeartbeat() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        byte[] testRequest = EngineFIX.constructTestRequestMessage("ABCDEF", "TEST42").getBytes();
+
+        parser.consume(testRequest, 0, testRequest.length);
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isTestRequest());
+        assertEquals("TEST42", parser.getTestReqID());
+
+        byte[] heartbeat = EngineFIX.constructHeartbeatMessage("ABCDEF", parser.getTestReqID()).getBytes();
+        parser.reset();
+        parser.consume(heartbeat, 0, heartbeat.length);
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isHeartbeat());
+        assertEquals("TEST42", parser.getTestReqID());
+        assertEquals("ABCDEF", parser.getSenderSubID());
+    }
+
+    @Test
+    public void testHeartbeatWithoutTestRequest() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        byte[] heartbeat = EngineFIX.constructHeartbeatMessage("ABCDEF", null).getBytes();
+
+        parser.consume(heartbeat, 0, heartbeat.length);
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isHeartbeat());
+        Assert.assertNull(parser.getTestReqID());
+    }
+
+    @Test
+    public void testConsumePrimitiveArray() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        byte[] message = EngineFIX.constructIdentificationMessage("ABCDEF", "broker", "nasdaq").getBytes();
+
+        parser.consume(message, 0, message.length);
+
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isValid());
+        assertEquals("A", parser.getMsgType());
+        assertEquals("ABCDEF", parser.getSenderSubID());
+        assertEquals("broker", parser.getSenderCompID());
+        assertEquals("nasdaq", parser.getTargetCompID());
+        Assert.assertArrayEquals(message, parser.getRawBytes());
+    }
+
+    @Test
+    public void testConsumeDirectByteBuffer() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        byte[] message = EngineFIX.constructSuccessMessage("ABCDEF").getBytes();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(message.length);
+        buffer.put(message).flip();
+
+        // Feed the message in two chunks, splitting a tag in the middle.
+        buffer.limit(5);
+        parser.consume(buffer);
+        Assert.assertFalse(parser.isComplete());
+        buffer.limit(message.length);
+        parser.consume(buffer);
+
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isSuccess());
+        assertEquals("ABCDEF", parser.getSenderSubID());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void testResetReusesParser() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        byte[] reject = EngineFIX.getFixBusinessRejectMessage("ABCDEF").getBytes();
+        byte[] success = EngineFIX.constructSuccessMessage("GHIJKL").getBytes();
+
+        parser.consume(reject, 0, reject.length);
+        Assert.assertTrue(parser.isBusinessReject());
+
+        parser.reset();
+        Assert.assertFalse(parser.isComplete());
+        assertEquals(0, parser.getRawLength());
+
+        parser.consume(success, 0, success.length);
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isSuccess());
+        assertEquals("GHIJKL", parser.getSenderSubID());
+    }
+
+    @Test
+    public void testConsumeStopsAtEndOfMessage() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        byte[] first = EngineFIX.constructSuccessMessage("ABCDEF", "1").getBytes();
+        byte[] second = EngineFIX.getFixBusinessRejectMessage("ABCDEF", "2").getBytes();
+        byte[] both = new byte[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+
+        int consumed = parser.consume(both, 0, both.length);
+        assertEquals(first.length, consumed);
+        Assert.assertTrue(parser.isSuccess());
+        assertEquals("1", parser.getClOrdID());
+        Assert.assertArrayEquals(first, parser.getRawBytes());
+
+        parser.reset();
+        assertEquals(second.length, parser.consume(both, consumed, both.length - consumed));
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isBusinessReject());
+        assertEquals("2", parser.getClOrdID());
+    }
+
+    @Test
+    public void testConsumeByteBufferLeavesNextMessage() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        byte[] first = EngineFIX.constructHeartbeatMessage("ABCDEF", null).getBytes();
+        byte[] second = EngineFIX.constructSuccessMessage("ABCDEF", "42").getBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length);
+        buffer.put(first).put(second).flip();
+
+        parser.consume(buffer);
+        Assert.assertTrue(parser.isHeartbeat());
+        assertEquals(first.length, buffer.position());
+
+        parser.reset();
+        parser.consume(buffer);
+        Assert.assertTrue(parser.isSuccess());
+        assertEquals("42", parser.getClOrdID());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void testOrderTypeFields() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        new FixEncoder().begin(buffer, 'D').field(34, 7).field(52, "20261018-09:30:00.000").field(50, "ABCDEF")
+                .field(11, "1").field(55, "apple").field(54, "buy").field(40, '2').field(59, '0').field(38, 5).field(44, 5).end();
+
+        parser.consume(buffer.flip());
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isValid());
+        assertEquals(7, parser.getMsgSeqNum());
+        assertEquals("20261018-09:30:00.000", parser.getSendingTime());
+        assertEquals("2", parser.getOrdType());
+        assertEquals("0", parser.getTimeInForce());
+        assertEquals(5, parser.getPrice());
+        assertEquals(5, parser.getView().getPrice());
+        assertEquals(5, parser.getView().getOrderQty());
+    }
+
+    @Test
+    public void testUnsupportedTagLeadingZero() {
+        EngineFIX parser = new EngineFIX();
+
+        Exception exception = Assert.assertThrows(UnsupportedTagException.class, () -> {
+            writeString(parser, "08=FIX.4.4");
+        });
+
+        assertEquals(UnsupportedTagException.getPrefix() + "08=FIX.4.4", exception.getMessage());
+    }
 }
@@ -0,0 +1,107 @@
+package engineFIX;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixEncoderTest {
+    private static EngineFIX parse(ByteBuffer buffer) throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        buffer.flip();
+        parser.consume(buffer);
+        return parser;
+    }
+
+    @Test
+    public void testEncodedMessageParses() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        FixEncoder encoder = new FixEncoder();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        int length = encoder.begin(buffer, 'D').field(49, "broker").field(50, "ABCDEF").field(56, "nasdaq")
+                .field(11, 42).field(55, "apple").field(54, "buy").field(38, 12).field(44, -5).end();
+        assertEquals(buffer.position(), length);
+
+        EngineFIX parser = parse(buffer);
+        Assert.assertTrue(parser.isComplete());
+        Assert.assertTrue(parser.isValid());
+        assertEquals("D", parser.getMsgType());
+        assertEquals("FIX.4.4", parser.getBeginString());
+        assertEquals("42", parser.getClOrdID());
+        assertEquals(12, parser.getOrderQty());
+        assertEquals(-5, parser.getPrice());
+        assertEquals(length, parser.getRawLength());
+    }
+
+    @Test
+    public void testSameFieldsAsBuilder() {
+        FixEncoder encoder = new FixEncoder();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        encoder.begin(buffer, '0').field(50, "ABCDEF").field(112, "TEST1").end();
+        String encoded = new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1);
+
+        // Same message, but CheckSum always has three digits.
+        String built = EngineFIX.constructHeartbeatMessage("ABCDEF", "TEST1");
+        String checkSum = built.substring(built.lastIndexOf("10=") + 3, built.length() - 1);
+        assertEquals(built.replace("10=" + checkSum, "10=" + String.format("%03d", Integer.parseInt(checkSum))), encoded);
+    }
+
+    @Test
+    public void testReusedOnDirectBuffer() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        FixEncoder encoder = new FixEncoder();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+
+        encoder.begin(buffer, 's').field(50, "ABCDEF").end();
+        Assert.assertTrue(parse(buffer).isSuccess());
+
+        buffer.clear();
+        encoder.begin(buffer, 'j').field(50, "GHIJKL").field(11, "7").end();
+        EngineFIX parser = parse(buffer);
+        Assert.assertTrue(parser.isBusinessReject());
+        assertEquals("GHIJKL", parser.getSenderSubID());
+        assertEquals("7", parser.getClOrdID());
+    }
+
+    @Test
+    public void testCopiesFieldFromView() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        byte[] testRequest = EngineFIX.constructTestRequestMessage("ABCDEF", "TEST42").getBytes();
+        EngineFIX request = new EngineFIX();
+        request.consume(testRequest, 0, testRequest.length);
+
+        FixEncoder encoder = new FixEncoder();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        encoder.begin(buffer, '0').field(50, "ABCDEF").field(112, request.getView(), 112).field(11, request.getView(), 11).end();
+
+        EngineFIX heartbeat = parse(buffer);
+        Assert.assertTrue(heartbeat.isHeartbeat());
+        assertEquals("TEST42", heartbeat.getTestReqID());
+        Assert.assertNull(heartbeat.getClOrdID());
+    }
+
+    @Test
+    public void testLongBody() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        FixEncoder encoder = new FixEncoder();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        String name = "b".repeat(2000);
+
+        encoder.begin(buffer, 'A').field(49, name).field(50, "ABCDEF").field(56, "nasdaq").end();
+
+        EngineFIX parser = parse(buffer);
+        Assert.assertTrue(parser.isLogon());
+        assertEquals(name, parser.getSenderCompID());
+        assertEquals(5 + 2004 + 10 + 10, parser.getBodyLength());
+    }
+
+    @Test
+    public void testBufferTooSmall() {
+        FixEncoder encoder = new FixEncoder();
+        ByteBuffer buffer = ByteBuffer.allocate(24);
+
+        Assert.assertThrows(BufferOverflowException.class, () -> encoder.begin(buffer, 's').field(50, "ABCDEF").end());
+    }
+}
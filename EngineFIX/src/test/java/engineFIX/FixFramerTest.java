@@ -0,0 +1,119 @@
+package engineFIX;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixFramerTest {
+    private static byte[] concat(byte[]... messages)
+    {
+        int length = 0;
+        for (byte[] message : messages)
+            length += message.length;
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (byte[] message : messages)
+        {
+            System.arraycopy(message, 0, bytes, offset, message.length);
+            offset += message.length;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testSplitsMessagesOfOneRead() throws TagFormatException, BadTagValueException, UnsupportedTagException {
+        FixFramer framer = new FixFramer();
+        EngineFIX parser = new EngineFIX();
+        byte[] first = EngineFIX.constructSuccessMessage("ABCDEF", "1").getBytes();
+        byte[] second = EngineFIX.getFixBusinessRejectMessage("ABCDEF", "2").getBytes();
+        byte[] third = EngineFIX.constructHeartbeatMessage("ABCDEF", null).getBytes();
+        byte[] read = concat(first, second, third);
+
+        framer.consume(read, 0, read.length);
+
+        Assert.assertTrue(framer.next());
+        assertEquals(0, framer.getOffset());
+        assertEquals(first.length, framer.getLength());
+        parser.consume(framer.getBuffer(), framer.getOffset(), framer.getLength());
+        Assert.assertTrue(parser.isSuccess());
+        assertEquals("1", parser.getClOrdID());
+
+        Assert.assertTrue(framer.next());
+        assertEquals(second.length, framer.getLength());
+        parser.reset();
+        parser.consume(framer.getBuffer(), framer.getOffset(), framer.getLength());
+        Assert.assertTrue(parser.isBusinessReject());
+        assertEquals("2", parser.getClOrdID());
+
+        Assert.assertTrue(framer.next());
+        assertEquals(third.length, framer.getLength());
+        Assert.assertFalse(framer.next());
+        assertEquals(0, framer.getBuffered());
+    }
+
+    @Test
+    public void testKeepsMessageCutByRead() throws TagFormatException, BadTagValueException {
+        FixFramer framer = new FixFramer();
+        byte[] first = EngineFIX.constructIdentificationMessage("ABCDEF", "broker", "nasdaq").getBytes();
+        byte[] second = EngineFIX.constructTestRequestMessage("ABCDEF", "TEST1").getBytes();
+        byte[] stream = concat(first, second);
+
+        // One byte per read, every message is only there once its last byte is.
+        int messages = 0;
+        for (int i = 0; i < stream.length; i++)
+        {
+            framer.consume(stream, i, 1);
+            if (framer.next())
+            {
+                messages++;
+                assertEquals(messages == 1 ? first.length - 1 : stream.length - 1, i);
+            }
+        }
+        assertEquals(2, messages);
+        assertEquals(0, framer.getBuffered());
+    }
+
+    @Test
+    public void testMessageLengthOnDirectBuffer() throws TagFormatException, BadTagValueException {
+        byte[] message = EngineFIX.constructSuccessMessage("ABCDEF").getBytes();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(message.length * 2);
+        buffer.put(message).put(message, 0, 10);
+
+        assertEquals(message.length, FixFramer.messageLength(buffer, 0, buffer.position()));
+        assertEquals(-1, FixFramer.messageLength(buffer, message.length, buffer.position()));
+        assertEquals(message.length + 10, buffer.position());
+    }
+
+    @Test
+    public void testWrongBodyLength() {
+        FixFramer framer = new FixFramer();
+        String message = "8=FIX.4.4\u00019=6\u000135=s\u000150=ABCDEF\u000110=42\u0001";
+        byte[] bytes = message.getBytes();
+        framer.consume(bytes, 0, bytes.length);
+
+        Exception exception = Assert.assertThrows(BadTagValueException.class, framer::next);
+        assertEquals(BadTagValueException.getPrefix() + "9=6", exception.getMessage());
+    }
+
+    @Test
+    public void testBodyLengthTooBig() {
+        FixFramer framer = new FixFramer();
+        byte[] bytes = ("8=FIX.4.4\u00019=" + (FixFramer.maxBodyLength + 1) + "\u0001").getBytes();
+        framer.consume(bytes, 0, bytes.length);
+
+        Assert.assertThrows(BadTagValueException.class, framer::next);
+    }
+
+    @Test
+    public void testNotFix() {
+        FixFramer framer = new FixFramer();
+        byte[] bytes = "GET / HTTP/1.1\r\n".getBytes();
+        framer.consume(bytes, 0, bytes.length);
+
+        Exception exception = Assert.assertThrows(TagFormatException.class, framer::next);
+        assertEquals(TagFormatException.getPrefix() + "GE", exception.getMessage());
+    }
+}
@@ -0,0 +1,86 @@
+package engineFIX;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixMessageViewTest {
+    private static final String order = "8=FIX.4.4\u00019=63\u000135=D\u000149=broker\u000150=ABCDEF\u000156=nasdaq\u0001"
+            + "55=apple\u000154=buy\u000138=12\u000144=5\u000110=42\u0001";
+
+    @Test
+    public void testWrapHeapBuffer() {
+        FixMessageView view = new FixMessageView();
+        byte[] bytes = order.getBytes();
+        view.wrap(bytes, 0, bytes.length);
+
+        assertEquals("D", view.getMsgType());
+        assertEquals("broker", view.getSenderCompID());
+        assertEquals("ABCDEF", view.getSenderSubID());
+        assertEquals("nasdaq", view.getTargetCompID());
+        assertEquals("apple", view.getSymbol());
+        assertEquals("buy", view.getSide());
+        assertEquals(12, view.getOrderQty());
+        assertEquals(5, view.getPrice());
+    }
+
+    @Test
+    public void testWrapDirectBufferWithOffset() {
+        FixMessageView view = new FixMessageView();
+        byte[] bytes = order.getBytes();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 10);
+        buffer.position(10);
+        buffer.put(bytes);
+
+        view.wrap(buffer, 10, bytes.length);
+
+        Assert.assertTrue(view.valueEquals(35, 'D'));
+        Assert.assertTrue(view.valueEquals(50, "ABCDEF"));
+        Assert.assertFalse(view.valueEquals(50, "ABCDEG"));
+        assertEquals(10 + order.indexOf("nasdaq"), view.getOffset(56));
+        assertEquals(6, view.getLength(56));
+    }
+
+    @Test
+    public void testRewrapForgetsPreviousMessage() {
+        FixMessageView view = new FixMessageView();
+        byte[] first = order.getBytes();
+        byte[] second = EngineFIX.constructSuccessMessage("GHIJKL").getBytes();
+
+        view.wrap(first, 0, first.length);
+        assertEquals("apple", view.getSymbol());
+
+        view.wrap(second, 0, second.length);
+        Assert.assertFalse(view.has(55));
+        Assert.assertNull(view.getSymbol());
+        assertEquals("GHIJKL", view.getSenderSubID());
+    }
+
+    @Test
+    public void testGetIntRange() {
+        FixMessageView view = new FixMessageView();
+        byte[] bytes = "38=2147483647\u000144=-2147483648\u000134=2147483648\u0001112=99999999999\u0001".getBytes();
+        view.wrap(bytes, 0, bytes.length);
+
+        assertEquals(Integer.MAX_VALUE, view.getInt(38));
+        assertEquals(Integer.MIN_VALUE, view.getInt(44));
+        Assert.assertThrows(NumberFormatException.class, () -> view.getInt(34));
+        Assert.assertThrows(NumberFormatException.class, () -> view.getInt(112));
+    }
+
+    @Test
+    public void testGetLongRange() {
+        FixMessageView view = new FixMessageView();
+        byte[] bytes = "11=9223372036854775807\u000144=-9223372036854775808\u000134=9223372036854775808\u0001112=2147483648\u0001".getBytes();
+        view.wrap(bytes, 0, bytes.length);
+
+        assertEquals(Long.MAX_VALUE, view.getLong(11));
+        assertEquals(Long.MIN_VALUE, view.getLong(44));
+        assertEquals(2147483648L, view.getLong(112));
+        assertEquals(0, view.getLong(38));
+        Assert.assertThrows(NumberFormatException.class, () -> view.getLong(34));
+    }
+}
@@ -0,0 +1,82 @@
+package engineFIX;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixTemplateTest {
+    private static final FixTemplate successTemplate = new FixTemplate('s', 50, 6);
+
+    private static EngineFIX parse(byte[] message) throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX parser = new EngineFIX();
+        parser.consume(message, 0, message.length);
+        return parser;
+    }
+
+    private static byte[] written(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.flip().remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testSameBytesAsEncoder() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        EngineFIX order = parse(EngineFIX.constructSuccessMessage("BROKER", "123456789").getBytes());
+        ByteBuffer fromTemplate = ByteBuffer.allocate(256);
+        ByteBuffer fromEncoder = ByteBuffer.allocate(256);
+
+        int length = successTemplate.write(fromTemplate, "ABCDEF", order.getView(), 11);
+        new FixEncoder().begin(fromEncoder, 's').field(50, "ABCDEF").field(11, order.getView(), 11).end();
+
+        assertEquals(fromTemplate.position(), length);
+        Assert.assertArrayEquals(written(fromEncoder), written(fromTemplate));
+    }
+
+    @Test
+    public void testReusedWithOtherIds() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+
+        successTemplate.write(buffer, "ABCDEF");
+        EngineFIX first = parse(written(buffer));
+        Assert.assertTrue(first.isValid());
+        assertEquals("ABCDEF", first.getSenderSubID());
+
+        buffer.clear();
+        successTemplate.write(buffer, "GHIJKL");
+        EngineFIX second = parse(written(buffer));
+        Assert.assertTrue(second.isSuccess());
+        assertEquals("GHIJKL", second.getSenderSubID());
+        Assert.assertNull(second.getClOrdID());
+    }
+
+    @Test
+    public void testSessionReject() throws UnsupportedTagException, TagFormatException, BadTagValueException {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        new FixTemplate('3').write(buffer);
+
+        byte[] message = written(buffer);
+        assertEquals("8=FIX.4.4\u00019=5\u000135=3\u000110=166\u0001", new String(message));
+        Assert.assertTrue(parse(message).isValid());
+    }
+
+    @Test
+    public void testWrongIdLength() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> successTemplate.write(buffer, "ABC"));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testBufferTooSmall() {
+        ByteBuffer buffer = ByteBuffer.allocate(24);
+
+        Assert.assertThrows(BufferOverflowException.class, () -> successTemplate.write(buffer, "ABCDEF"));
+        assertEquals(0, buffer.position());
+    }
+}
@@ -0,0 +1,120 @@
+package bench;
+
+import engineFIX.EngineFIX;
+import engineFIX.FixEncoder;
+import engineFIX.FixTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Cost of BodyLength and CheckSum on both ends. "encodeConcatenated" is how the builders used to do it:
+// concatenate the fields, then concatenate them again in another order to sum their characters.
+// "encodeIncremental" is the current builder, which writes the message once and sums it as bytes.
+// "encodeInPlace" is FixEncoder writing the same message into a reused direct buffer, no String at all,
+// and "encodeTemplate" is a FixTemplate copying it with only the id, ClOrdID and CheckSum left to write.
+// "decodePerTag" is how the parser used to sum a message: split every tag, glue tag and value
+// back together and sum the characters of the new String. "decodeSinglePass" is the whole parse
+// of the current parser, the checksum being summed in the same pass that finds the tags.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumBenchmark {
+    private static final String fixVersion = "FIX.4.4";
+    private static final char delimiter = '\u0001';
+
+    private String uniqueId;
+    private String clOrdId;
+    private String orderString;
+    private byte[] order;
+    private EngineFIX parser;
+    private FixEncoder encoder;
+    private FixTemplate template;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup()
+    {
+        uniqueId = "ABCDEF";
+        clOrdId = "123456";
+        String body = "35=D" + delimiter + "49=broker" + delimiter + "50=" + uniqueId + delimiter
+                + "56=nasdaq" + delimiter + "11=" + clOrdId + delimiter + "55=apple" + delimiter
+                + "54=buy" + delimiter + "38=12" + delimiter + "44=5" + delimiter;
+        String message = "8=" + fixVersion + delimiter + "9=" + body.length() + delimiter + body;
+        orderString = message + "10=" + (EngineFIX.calculateCheckSum(message) % 256) + delimiter;
+        order = orderString.getBytes();
+        parser = new EngineFIX();
+        try
+        {
+            // The template copies the ClOrdID of a parsed order.
+            parser.consume(order, 0, order.length);
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException(e);
+        }
+        encoder = new FixEncoder();
+        template = new FixTemplate('s', 50, uniqueId.length());
+        buffer = ByteBuffer.allocateDirect(256);
+    }
+
+    @Benchmark
+    public String encodeConcatenated()
+    {
+        String beginString = "8=" + fixVersion + delimiter;
+        String msgType = "35=s" + delimiter;
+        String senderSubID = "50=" + uniqueId + delimiter;
+        String clOrdID = "11=" + clOrdId + delimiter;
+
+        int contentLength = msgType.length() + senderSubID.length() + clOrdID.length();
+        String bodyLength = "9=" + contentLength + delimiter;
+
+        int checksum = EngineFIX.calculateCheckSum(beginString + bodyLength + msgType + senderSubID + clOrdID) % 256;
+        String checksumStr = "10=" + checksum + delimiter;
+        return beginString + bodyLength + senderSubID + msgType + clOrdID + checksumStr;
+    }
+
+    @Benchmark
+    public String encodeIncremental()
+    {
+        return EngineFIX.constructSuccessMessage(uniqueId, clOrdId);
+    }
+
+    @Benchmark
+    public int encodeInPlace()
+    {
+        buffer.clear();
+        return encoder.begin(buffer, 's').field(50, uniqueId).field(11, clOrdId).end();
+    }
+
+    @Benchmark
+    public int encodeTemplate()
+    {
+        buffer.clear();
+        return template.write(buffer, uniqueId, parser.getView(), 11);
+    }
+
+    @Benchmark
+    public int decodePerTag()
+    {
+        int sum = 0;
+        for (String tag : orderString.split(String.valueOf(delimiter)))
+        {
+            String[] ar = tag.split("=");
+            if (!ar[0].equals("10"))
+                sum += EngineFIX.calculateCheckSum(ar[0] + "=" + ar[1]) + 1;
+        }
+        return sum % 256;
+    }
+
+    @Benchmark
+    public int decodeSinglePass() throws Exception
+    {
+        parser.reset();
+        parser.consume(order, 0, order.length);
+        return parser.getAsciiSum();
+    }
+}
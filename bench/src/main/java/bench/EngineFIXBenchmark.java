@@ -0,0 +1,158 @@
+package bench;
+
+import engineFIX.EngineFIX;
+import engineFIX.FixEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Baseline of EngineFIX to catch regressions: parsing, every builder and the array conversions.
+// "consume" parses one order per operation, fed the way a socket could hand it over: "byte" is one
+// byte per consume, "tag" one field per consume, "message" all of it at once. With "messages" a read
+// holds a batch of batchSize orders split by the return value of consume, and an operation is the batch.
+// Run with -prof gc for the bytes allocated per operation (gc.alloc.rate.norm) next to ops/s:
+//     java -jar bench/target/benchmarks.jar EngineFIXBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineFIXBenchmark {
+    private static final int batchSize = 16;
+    private static final String uniqueId = "ABCDEF";
+
+    private static byte[] encodeOrder()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        new FixEncoder().begin(buffer, 'D').field(49, "broker").field(50, uniqueId).field(56, "nasdaq")
+                .field(11, 123456).field(55, "apple").field(54, "buy").field(38, 12).field(44, 5).end();
+        byte[] order = new byte[buffer.flip().remaining()];
+        buffer.get(order);
+        return order;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Feed {
+        @Param({"byte", "tag", "message", "messages"})
+        public String chunk;
+
+        private byte[] order;
+
+        // Where each consume of the order ends, for the "byte" and "tag" chunks.
+        private int[] chunkEnds;
+        private byte[] batch;
+        private EngineFIX parser;
+
+        @Setup
+        public void setup()
+        {
+            order = encodeOrder();
+            ArrayList<Integer> ends = new ArrayList<>();
+            for (int i = 0; i < order.length; i++)
+            {
+                if (chunk.equals("byte") || order[i] == 0x1)
+                    ends.add(i + 1);
+            }
+            chunkEnds = ends.stream().mapToInt(Integer::intValue).toArray();
+
+            batch = new byte[order.length * batchSize];
+            for (int i = 0; i < batchSize; i++)
+                System.arraycopy(order, 0, batch, i * order.length, order.length);
+            parser = new EngineFIX();
+        }
+    }
+
+    private byte[] order;
+    private ArrayList<Byte> orderList;
+
+    @Setup
+    public void setup()
+    {
+        order = encodeOrder();
+        orderList = new ArrayList<>();
+        for (byte b : order)
+            orderList.add(b);
+    }
+
+    @Benchmark
+    public int consume(Feed feed) throws Exception
+    {
+        EngineFIX parser = feed.parser;
+        switch (feed.chunk)
+        {
+            case "message":
+                parser.reset();
+                parser.consume(feed.order, 0, feed.order.length);
+                break ;
+            case "messages":
+                for (int offset = 0; offset < feed.batch.length; )
+                {
+                    parser.reset();
+                    offset += parser.consume(feed.batch, offset, feed.batch.length - offset);
+                }
+                break ;
+            default:
+                parser.reset();
+                int start = 0;
+                for (int end : feed.chunkEnds)
+                {
+                    parser.consume(feed.order, start, end - start);
+                    start = end;
+                }
+        }
+        if (!parser.isComplete())
+            throw new IllegalStateException("Order not parsed");
+        return parser.getAsciiSum();
+    }
+
+    @Benchmark
+    public String successMessage()
+    {
+        return EngineFIX.constructSuccessMessage(uniqueId, "123456");
+    }
+
+    @Benchmark
+    public String businessRejectMessage()
+    {
+        return EngineFIX.getFixBusinessRejectMessage(uniqueId, "123456");
+    }
+
+    @Benchmark
+    public String sessionRejectMessage()
+    {
+        return EngineFIX.getFixSessionRejectMessage();
+    }
+
+    @Benchmark
+    public String identificationMessage()
+    {
+        return EngineFIX.constructIdentificationMessage(uniqueId, "broker", "nasdaq");
+    }
+
+    @Benchmark
+    public String heartbeatMessage()
+    {
+        return EngineFIX.constructHeartbeatMessage(uniqueId, "TEST1");
+    }
+
+    @Benchmark
+    public String testRequestMessage()
+    {
+        return EngineFIX.constructTestRequestMessage(uniqueId, "TEST1");
+    }
+
+    @Benchmark
+    public Byte[] toObjectArray()
+    {
+        return EngineFIX.toObjectArray(order);
+    }
+
+    @Benchmark
+    public byte[] toPrimitiveArray()
+    {
+        return EngineFIX.toPrimitiveArray(orderList);
+    }
+}
@@ -0,0 +1,75 @@
+package bench;
+
+import market.Instrument;
+import market.Market;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cost of finding the instrument an order is for, in a market listing "instruments" symbols.
+// "linearScan" is how Market used to find it, comparing the symbol to every listed Instrument in turn.
+// "symbolIndex" is getInstrumentData of the current Market, through its SymbolIndex. Symbols are looked up
+// in a random order from copies of the listed ones, as the parser hands over a new String for every order.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InstrumentLookupBenchmark {
+    private static final int lookupCount = 1 << 12;
+
+    @Param({"10", "10000", "1000000"})
+    public int instruments;
+
+    private Market market;
+    private ArrayList<Instrument> listed;
+    private Instrument[] lookups;
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        market = new Market();
+        listed = new ArrayList<>();
+        for (String symbol : new String[] {"apple", "google", "microsoft", "oracle"})
+            listed.add(market.getInstrumentData(new Instrument(symbol)));
+        for (int i = listed.size(); i < instruments; i++)
+        {
+            Instrument instrument = new Instrument("symbol" + i, 1 + i % 100, 1);
+            market.sell(instrument, instrument.getPrice(), instrument.getQuantity());
+            listed.add(instrument);
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        lookups = new Instrument[lookupCount];
+        for (int i = 0; i < lookupCount; i++)
+            lookups[i] = new Instrument(new String(listed.get(random.nextInt(listed.size())).getName()));
+    }
+
+    private Instrument nextLookup()
+    {
+        next = (next + 1) & (lookupCount - 1);
+        return lookups[next];
+    }
+
+    @Benchmark
+    public Instrument linearScan()
+    {
+        Instrument lookup = nextLookup();
+        for (Instrument instrument : listed)
+        {
+            if (instrument.compareTo(lookup) == 0)
+                return instrument;
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Instrument symbolIndex()
+    {
+        return market.getInstrumentData(nextLookup());
+    }
+}
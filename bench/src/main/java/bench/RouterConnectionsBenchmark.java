@@ -0,0 +1,174 @@
+package bench;
+
+import engineFIX.EngineFIX;
+import engineFIX.FixFramer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+// Order round trip latency through a real router process holding many connections,
+// for each way the router can serve them: "selector" (one selector and the worker pool),
+// "reactors" (one selector per core) and "threads" (one blocking thread per connection,
+// virtual on Java 21, platform threads before). connections counts brokers and markets,
+// every broker is paired with its own market and only the first pair trades, the others sit idle.
+// The router runs in its own process so both ends get the whole file descriptor limit, with a heartbeat
+// interval long enough that it sends no test request while the connections are opened or measured.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouterConnectionsBenchmark {
+    private static final String host = "localhost";
+    private static final int marketPort = 5001;
+    private static final int brokerPort = 5000;
+    private static final String fixVersion = "FIX.4.4";
+    private static final char delimiter = '\u0001';
+    private static final String heartbeatSeconds = "86400";
+
+    @Param({"selector", "reactors", "threads"})
+    public String mode;
+
+    @Param({"10", "1000", "10000"})
+    public int connections;
+
+    private Process router;
+    private SocketChannel[] brokers;
+    private SocketChannel[] markets;
+    // What was read from each connection and not handed out yet, a read may hold several messages.
+    private FixFramer[] brokerFramers;
+    private FixFramer[] marketFramers;
+    private byte[][] orders;
+    private byte[][] replies;
+    private EngineFIX parser;
+    private ByteBuffer readBuffer;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder;
+        if (mode.equals("reactors"))
+            builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Main",
+                    "--reactors", String.valueOf(Runtime.getRuntime().availableProcessors()),
+                    "--heartbeat", heartbeatSeconds);
+        else if (mode.equals("threads"))
+            builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Main", "--threads",
+                    "--heartbeat", heartbeatSeconds);
+        else
+            builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Main",
+                    "--heartbeat", heartbeatSeconds);
+        router = builder.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        parser = new EngineFIX();
+        readBuffer = ByteBuffer.allocate(4096);
+
+        int pairs = connections / 2;
+        brokers = new SocketChannel[pairs];
+        markets = new SocketChannel[pairs];
+        brokerFramers = new FixFramer[pairs];
+        marketFramers = new FixFramer[pairs];
+        orders = new byte[pairs][];
+        replies = new byte[pairs][];
+        for (int i = 0; i < pairs; i++)
+        {
+            String marketName = "market" + i;
+            markets[i] = connect(marketPort);
+            marketFramers[i] = new FixFramer();
+            write(markets[i], EngineFIX.constructIdentificationMessage("NONE", marketName, marketName).getBytes());
+            String marketId = read(markets[i], marketFramers[i], "A").getSenderSubID();
+
+            brokers[i] = connect(brokerPort);
+            brokerFramers[i] = new FixFramer();
+            write(brokers[i], EngineFIX.constructIdentificationMessage("NONE", "broker" + i, marketName).getBytes());
+            String brokerId = read(brokers[i], brokerFramers[i], "A").getSenderSubID();
+
+            orders[i] = constructOrder("broker" + i, brokerId, marketName);
+            replies[i] = EngineFIX.constructSuccessMessage(marketId).getBytes();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        for (int i = 0; i < brokers.length; i++)
+        {
+            if (brokers[i] != null)
+                brokers[i].close();
+            if (markets[i] != null)
+                markets[i].close();
+        }
+        router.destroy();
+        router.waitFor();
+    }
+
+    // The router is still starting up for the first connections.
+    private static SocketChannel connect(int port) throws Exception
+    {
+        for (int attempt = 0; ; attempt++)
+        {
+            try {
+                return SocketChannel.open(new InetSocketAddress(host, port));
+            } catch (IOException ex) {
+                if (attempt == 100)
+                    throw ex;
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static void write(SocketChannel channel, byte[] message) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    // Next message of the connection: the socket is only read when the framer holds no complete message,
+    // the messages after it in the same read and a partial one at the end are kept for the next calls.
+    // Anything but msgType means the round trips are out of step, the run is stopped.
+    private EngineFIX read(SocketChannel channel, FixFramer framer, String msgType) throws Exception
+    {
+        while (!framer.next())
+        {
+            readBuffer.clear();
+            if (channel.read(readBuffer) < 0)
+                throw new IOException("Router closed the connection");
+            framer.consume(readBuffer.array(), 0, readBuffer.position());
+        }
+        parser.reset();
+        parser.consume(framer.getBuffer(), framer.getOffset(), framer.getLength());
+        if (parser.isSessionReject())
+            throw new IllegalStateException("Router rejected the message");
+        if (!msgType.equals(parser.getMsgType()))
+            throw new IllegalStateException("Expected a message of type " + msgType + ", read " + parser.getMsgType());
+        return parser;
+    }
+
+    private static byte[] constructOrder(String name, String uniqueId, String market)
+    {
+        String body = "35=D" + delimiter + "49=" + name + delimiter + "50=" + uniqueId + delimiter
+                + "56=" + market + delimiter + "55=apple" + delimiter + "54=buy" + delimiter
+                + "38=1" + delimiter + "44=5" + delimiter;
+        String message = "8=" + fixVersion + delimiter + "9=" + body.length() + delimiter + body;
+        return (message + "10=" + (EngineFIX.calculateCheckSum(message) % 256) + delimiter).getBytes();
+    }
+
+    // The first broker sends an order, its market reads it and answers, the broker reads the answer.
+    @Benchmark
+    public String roundTrip() throws Exception
+    {
+        write(brokers[0], orders[0]);
+        read(markets[0], marketFramers[0], "D");
+        write(markets[0], replies[0]);
+        return read(brokers[0], brokerFramers[0], "s").getMsgType();
+    }
+}
@@ -0,0 +1,123 @@
+package bench;
+
+import engineFIX.EngineFIX;
+import org.openjdk.jmh.annotations.*;
+import server.SerialExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of the router event handling as the number of broker/market pairs grows.
+// One operation sends ordersPerPair orders through every pair, each order is parsed
+// on the broker then on the market, like the read tasks do. "globalMonitor" runs every
+// hop under one lock, as the router used to, "perConnection" runs them on one serial
+// executor per client. With the monitor ops/s drops as pairs are added, per connection
+// it stays flat until the cores are saturated.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouterExecutorBenchmark {
+    private static final int ordersPerPair = 256;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int pairs;
+
+    private ExecutorService service;
+    private SerialExecutor[] brokers;
+    private SerialExecutor[] markets;
+    private EngineFIX[] brokerParsers;
+    private EngineFIX[] marketParsers;
+    private byte[] order;
+    private final Object monitor = new Object();
+
+    @Setup
+    public void setup()
+    {
+        service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        brokers = new SerialExecutor[pairs];
+        markets = new SerialExecutor[pairs];
+        brokerParsers = new EngineFIX[pairs];
+        marketParsers = new EngineFIX[pairs];
+        for (int i = 0; i < pairs; i++)
+        {
+            brokers[i] = new SerialExecutor(service);
+            markets[i] = new SerialExecutor(service);
+            brokerParsers[i] = new EngineFIX();
+            marketParsers[i] = new EngineFIX();
+        }
+        order = EngineFIX.constructIdentificationMessage("ABCDEF", "broker", "nasdaq").getBytes();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        service.shutdownNow();
+    }
+
+    // The parser keeps what it parsed, so the work can't be optimized away.
+    private void parse(EngineFIX parser)
+    {
+        try {
+            parser.reset();
+            parser.consume(order, 0, order.length);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public void globalMonitor() throws InterruptedException
+    {
+        CountDownLatch done = new CountDownLatch(pairs * ordersPerPair);
+        for (int i = 0; i < pairs; i++)
+        {
+            EngineFIX brokerParser = brokerParsers[i];
+            EngineFIX marketParser = marketParsers[i];
+            for (int j = 0; j < ordersPerPair; j++)
+            {
+                service.submit(() -> {
+                    synchronized (monitor)
+                    {
+                        parse(brokerParser);
+                    }
+                    service.submit(() -> {
+                        synchronized (monitor)
+                        {
+                            parse(marketParser);
+                        }
+                        done.countDown();
+                    });
+                });
+            }
+        }
+        done.await();
+    }
+
+    @Benchmark
+    public void perConnection() throws InterruptedException
+    {
+        CountDownLatch done = new CountDownLatch(pairs * ordersPerPair);
+        for (int i = 0; i < pairs; i++)
+        {
+            SerialExecutor market = markets[i];
+            EngineFIX brokerParser = brokerParsers[i];
+            EngineFIX marketParser = marketParsers[i];
+            for (int j = 0; j < ordersPerPair; j++)
+            {
+                brokers[i].execute(() -> {
+                    parse(brokerParser);
+                    market.execute(() -> {
+                        parse(marketParser);
+                        done.countDown();
+                    });
+                });
+            }
+        }
+        done.await();
+    }
+}
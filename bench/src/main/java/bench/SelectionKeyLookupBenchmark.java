@@ -0,0 +1,84 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// What the router pays on every readiness event to find the client behind a key and
+// set its interest ops again. "portLookup" is the old path: ask the channel for its
+// local and remote address, look the client up in a map keyed by remote port, then
+// re-register the channel. "attachment" takes the client attached to the key and
+// changes the interest ops on the key itself.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectionKeyLookupBenchmark {
+    // Other connections in the maps, the lookup is not done in an empty map.
+    private static final int clients = 1000;
+
+    private ServerSocketChannel server;
+    private SocketChannel peer;
+    private SocketChannel channel;
+    private Selector selector;
+    private SelectionKey key;
+    private int serverPort;
+    private final ConcurrentHashMap<Integer, Object> clientsByPort = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setup() throws IOException
+    {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        serverPort = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        peer = SocketChannel.open(server.getLocalAddress());
+        channel = server.accept();
+        channel.configureBlocking(false);
+
+        Object client = new Object();
+        for (int i = 0; i < clients; i++)
+            clientsByPort.put(70000 + i, new Object());
+        clientsByPort.put(((InetSocketAddress) channel.getRemoteAddress()).getPort(), client);
+
+        selector = Selector.open();
+        key = channel.register(selector, SelectionKey.OP_READ, client);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        selector.close();
+        channel.close();
+        peer.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Object portLookup() throws IOException
+    {
+        InetSocketAddress localAddress = (InetSocketAddress) channel.getLocalAddress();
+        InetSocketAddress remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+        Object client = null;
+        if (localAddress.getPort() == serverPort)
+            client = clientsByPort.get(remoteAddress.getPort());
+        channel.register(selector, SelectionKey.OP_READ);
+        return client;
+    }
+
+    @Benchmark
+    public Object attachment()
+    {
+        Object client = key.attachment();
+        key.interestOps(SelectionKey.OP_READ);
+        return client;
+    }
+}
@@ -0,0 +1,128 @@
+package bench;
+
+import engineFIX.EngineFIX;
+import engineFIX.FixEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Cost of finding what to do with one tag, every result is per tag of an order carrying the
+// tags the parser supports. "compareChain" is how parseTag used to do it: split "tag=value" and
+// compare the tag String to every supported tag in turn. "lookupSwitch" is a switch on the tag
+// number with a case per tag, which javac turns into a binary search over the cases.
+// "dispatchTable" is the current parser's lookup of a handler in an array indexed by tag number.
+// "parseOrder" is the whole parse of the order by EngineFIX, divided by its number of tags.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagDispatchBenchmark {
+    private static final int tagCount = 16;
+
+    private static final String[] supportedTags = {"10", "8", "9", "11", "34", "35", "38", "40", "44", "49", "50", "52", "54", "55", "56", "59", "112"};
+
+    private static final byte[] handlers = new byte[128];
+
+    static {
+        for (String tag : supportedTags)
+            handlers[Integer.parseInt(tag)] = (byte) (tag.length() + 1);
+    }
+
+    private String[] fields;
+    private int[] tags;
+    private byte[] order;
+    private EngineFIX parser;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        new FixEncoder().begin(buffer, 'D').field(34, 7).field(49, "broker").field(50, "ABCDEF")
+                .field(52, "20261018-09:30:00.000").field(56, "nasdaq").field(11, 123456).field(55, "apple")
+                .field(54, "buy").field(40, '2').field(59, '0').field(38, 12).field(44, 5).end();
+        order = new byte[buffer.flip().remaining()];
+        buffer.get(order);
+
+        fields = new String(order).split("\u0001");
+        if (fields.length != tagCount)
+            throw new IllegalStateException(fields.length + " tags in the order");
+        tags = new int[tagCount];
+        for (int i = 0; i < tagCount; i++)
+            tags[i] = Integer.parseInt(fields[i].substring(0, fields[i].indexOf('=')));
+        parser = new EngineFIX();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(tagCount)
+    public void compareChain(Blackhole blackhole)
+    {
+        for (String field : fields)
+        {
+            String[] ar = field.split("=");
+            int handler = -1;
+            for (int i = 0; i < supportedTags.length; i++)
+            {
+                if (ar[0].compareTo(supportedTags[i]) == 0)
+                {
+                    handler = i;
+                    break ;
+                }
+            }
+            blackhole.consume(handler);
+            blackhole.consume(ar[1]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(tagCount)
+    public void lookupSwitch(Blackhole blackhole)
+    {
+        for (int tag : tags)
+        {
+            int handler;
+            switch (tag)
+            {
+                case 10: handler = 1; break ;
+                case 8: handler = 2; break ;
+                case 9: handler = 3; break ;
+                case 11: handler = 4; break ;
+                case 34: handler = 5; break ;
+                case 35: handler = 6; break ;
+                case 38: handler = 7; break ;
+                case 40: handler = 8; break ;
+                case 44: handler = 9; break ;
+                case 49: handler = 10; break ;
+                case 50: handler = 11; break ;
+                case 52: handler = 12; break ;
+                case 54: handler = 13; break ;
+                case 55: handler = 14; break ;
+                case 56: handler = 15; break ;
+                case 59: handler = 16; break ;
+                case 112: handler = 17; break ;
+                default: handler = 0;
+            }
+            blackhole.consume(handler);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(tagCount)
+    public void dispatchTable(Blackhole blackhole)
+    {
+        for (int tag : tags)
+            blackhole.consume((tag >= 0 && tag < handlers.length) ? handlers[tag] : 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(tagCount)
+    public int parseOrder() throws Exception
+    {
+        parser.reset();
+        parser.consume(order, 0, order.length);
+        return parser.getAsciiSum();
+    }
+}
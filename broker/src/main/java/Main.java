@@ -1,7 +1,72 @@
 import broker.Broker;
+import broker.LoadGenerator;
+
+import java.util.Arrays;
+import java.util.List;
 
 public class Main {
+    private static final String usage = "Usage: broker [--load [--markets NAME,...] [--rate ORDERS_PER_SECOND] [--duration SECONDS]"
+            + " [--warmup SECONDS] [--buy-percent PERCENT] [--instruments NAME,...]]";
+
+    private static int parseInt(String value, String name, int min, int max)
+    {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= min && number <= max)
+                return number;
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        System.err.println(name + " should be an integer between " + min + " and " + max);
+        System.exit(1);
+        return 0;
+    }
+
+    // Without --load the broker asks the user for its orders, with it orders are generated.
+    private static LoadGenerator parseLoadOptions(String[] args)
+    {
+        List<String> markets = List.of("nasdaq");
+        int rate = 1000;
+        int duration = 10;
+        int warmup = 2;
+        int buyPercent = 50;
+        String[] instruments = {"apple", "google", "microsoft", "oracle"};
+        for (int i = 1; i < args.length; i++)
+        {
+            // One broker session per market, every market has to be running.
+            if (args[i].equals("--markets") && i + 1 < args.length)
+                markets = Arrays.asList(args[++i].split(","));
+            // Orders per second over all sessions.
+            else if (args[i].equals("--rate") && i + 1 < args.length)
+                rate = parseInt(args[++i], "Rate", 1, 10_000_000);
+            else if (args[i].equals("--duration") && i + 1 < args.length)
+                duration = parseInt(args[++i], "Duration", 1, 86400);
+            else if (args[i].equals("--warmup") && i + 1 < args.length)
+                warmup = parseInt(args[++i], "Warmup", 0, 86400);
+            else if (args[i].equals("--buy-percent") && i + 1 < args.length)
+                buyPercent = parseInt(args[++i], "Buy percent", 0, 100);
+            else if (args[i].equals("--instruments") && i + 1 < args.length)
+                instruments = args[++i].split(",");
+            else
+            {
+                System.err.println(usage);
+                System.exit(1);
+            }
+        }
+        return new LoadGenerator(markets, rate, duration, warmup, buyPercent, instruments);
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--load"))
+        {
+            parseLoadOptions(args).start();
+            return ;
+        }
+        if (args.length > 0)
+        {
+            System.err.println(usage);
+            System.exit(1);
+        }
         Broker client = new Broker("someBroker");
         client.start();
     }
@@ -2,33 +2,54 @@ package broker;
 
 import engineFIX.BadTagValueException;
 import engineFIX.EngineFIX;
+import engineFIX.FixEncoder;
+import engineFIX.FixFramer;
 import engineFIX.TagFormatException;
 import engineFIX.UnsupportedTagException;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Broker {
     private static final int brokerPort = 5000;
     private static final String host = "localhost";
-    private static final String FIXVersion = "FIX 4.2";
-    private static final char delimiter = 0x1;
+    private static final int initialOrderCapacity = 256;
 
     private boolean connected;
     private InputStream inputStream;
     private OutputStream outputStream;
 
     private EngineFIX parser;
+    private final FixFramer framer;
+    private final byte[] readBuffer;
+
+    // Orders are encoded by the main thread, in place, then written from the buffer.
+    private final FixEncoder orderEncoder;
+    private ByteBuffer orderBuffer;
     private String uniqueId;
     private final String name;
 
+    // Orders sent and not answered yet, by ClOrdID (tag 11), which the market echoes back in its answer.
+    // Orders are sent without waiting for the previous one to be answered.
+    private final Map<String, String> pendingOrders;
+    private long lastClOrdId;
+
     public Broker(String name)
     {
         this.uniqueId = null;
         this.parser = new EngineFIX();
+        this.framer = new FixFramer();
+        this.readBuffer = new byte[1000];
+        this.orderEncoder = new FixEncoder();
+        this.orderBuffer = ByteBuffer.allocate(initialOrderCapacity);
         this.name = name;
         this.connected = false;
+        this.pendingOrders = new HashMap<>();
+        this.lastClOrdId = 0;
     }
 
     private void connect() throws IOException {
@@ -51,107 +72,148 @@ public class Broker {
         return true;
     }
 
-    public static int calculateCheckSum(String str)
+    // Written in place into orderBuffer, the order is in it up to its position.
+    // The buffer only grows if what the user typed does not fit.
+    private void encodeFixOrderMessage(long clOrdId, String market, String symbol, String operationType, String quantity, String price)
     {
-        int sum = 0;
-        char[] array = str.toCharArray();
-        for (char c : array) sum += c;
-        return sum;
+        while (true)
+        {
+            try {
+                // D means new Order.
+                orderEncoder.begin(orderBuffer.clear(), 'D')
+                        .field(49, name)
+                        .field(50, uniqueId)
+                        .field(56, market)
+                        .field(11, clOrdId)
+                        .field(55, symbol)
+                        .field(54, operationType)
+                        .field(38, quantity)
+                        .field(44, price)
+                        .end();
+                return ;
+            } catch (BufferOverflowException e) {
+                orderBuffer = ByteBuffer.allocate(orderBuffer.capacity() * 2);
+            }
+        }
     }
 
-    private String constructFixOrderMessage(String market, String symbol, String operationType, String quantity, String price)
-    {
-        // Part of the header.
-        String beginStringTag = "8=" + FIXVersion + delimiter;
-
-        // D means new Order.
-        String msgType = "35=" + "D" + delimiter;
-
-        // Part of the body.
-        String targetCompID = "56=" + market + delimiter;
-
-        String senderSubID = "50=" + uniqueId + delimiter;
-
-        String senderCompID = "49=" + name + delimiter;
-
-        String sideTag = "54=" + operationType + delimiter;
+    // Orders are sent by the main thread and heartbeats by the reader thread.
+    private synchronized void sendRequest(String message) throws IOException {
+        this.outputStream.write(message.getBytes());
+    }
 
-        String symbolTag = "55=" + symbol + delimiter;
-        String orderQtyTag = "38=" + quantity + delimiter;
-        String priceTag = "44=" + price + delimiter;
+    private synchronized void sendRequest(ByteBuffer message) throws IOException {
+        this.outputStream.write(message.array(), 0, message.position());
+    }
 
-        // Part of the header.
-        String bodyLength = "9=" + String.valueOf(senderCompID.length() + msgType.length() + senderSubID.length() + sideTag.length() + symbolTag.length() + orderQtyTag.length() + priceTag.length() + targetCompID.length()) + delimiter;
+    // Hands whatever the router sent to the framer, which splits it into messages.
+    private void read() throws IOException {
+        int bytesRead = this.inputStream.read(readBuffer);
+        // The router reaps a broker that takes too long to log on or to answer, the user is told why it stops.
+        if (bytesRead == -1)
+        {
+            System.err.println("Router closed the connection");
+            System.exit(1);
+        }
+        framer.consume(readBuffer, 0, bytesRead);
+    }
 
-        // Message (without the checksum).
-        String FIXMessage = beginStringTag + bodyLength + msgType + senderCompID + senderSubID + targetCompID + symbolTag + sideTag + orderQtyTag + priceTag;
+    private void parseMessage() throws UnsupportedTagException, BadTagValueException, TagFormatException {
+        parser.reset();
+        parser.consume(framer.getBuffer(), framer.getOffset(), framer.getLength());
+    }
 
-        // Calculate the checksum and append it to message.
-        int checksum = Broker.calculateCheckSum(FIXMessage) % 256;
-        return FIXMessage.concat("10=" + String.valueOf(checksum) + delimiter);
+    private boolean readUniqueId() throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
+        while (!framer.next())
+            read();
+        parseMessage();
+        this.uniqueId = parser.getSenderSubID();
+        return !(parser.isSessionReject());
     }
 
-    private void sendRequest(String message) throws IOException {
-        this.outputStream.write(message.getBytes());
+    public void sendIdentificationMessage(String target) throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
+        String message = EngineFIX.constructIdentificationMessage(uniqueId, name, target);
+        sendRequest(message);
     }
 
-    private boolean readUniqueId() throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
-        while (!parser.isComplete())
-        {
-            byte[] res = new byte[1000];
-            int bytesRead = this.inputStream.read(res);
-            if (bytesRead == -1)
-                System.exit(0);
-            if (bytesRead > 0)
+    // Runs on its own thread once logged on, so the router's test requests are answered
+    // even while the main thread waits for user input, and so are the answers to our orders.
+    private void readMessages() {
+        try {
+            while (true)
             {
-                res = ByteBuffer.wrap(res).slice(0, bytesRead).array();
-                parser.consume(EngineFIX.toObjectArray(res));
-                if (parser.isComplete())
+                read();
+                // Answers to orders sent back to back may come in the same read.
+                while (framer.next())
                 {
-                    boolean success = !(parser.isSessionReject());
-                    this.uniqueId = parser.getSenderSubID();
-                    this.parser = new EngineFIX();
-                    return success;
+                    parseMessage();
+                    if (parser.isTestRequest())
+                        sendRequest(EngineFIX.constructHeartbeatMessage(uniqueId, parser.getTestReqID()));
+                    else if (!parser.isHeartbeat())
+                        handleResponse();
                 }
             }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
         }
-        return false;
     }
 
-    public void sendIdentificationMessage(String target) throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
-        String message = EngineFIX.constructIdentificationMessage(uniqueId, name, target);
-        outputStream.write(message.getBytes());
+    private void handleResponse() {
+        if (parser.isSessionReject())
+        {
+            System.err.println("Maket is invalid");
+            System.exit(1);
+        }
+
+        String clOrdId = parser.getClOrdID();
+        String order;
+        synchronized (pendingOrders)
+        {
+            order = pendingOrders.get(clOrdId);
+        }
+        if (order == null)
+            order = "unknown order";
+
+        if (parser.isBusinessReject())
+            System.out.println("Transaction rejected: " + order);
+        else if (parser.isSuccess())
+            System.out.println("Transaction success: " + order);
+
+        // Only done once printed, the main thread may be waiting on it to leave.
+        synchronized (pendingOrders)
+        {
+            pendingOrders.remove(clOrdId);
+            pendingOrders.notifyAll();
+        }
     }
 
-    private void readResponse() throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
-        while (!parser.isComplete())
+    private void sendOrder(String market, String instrument, String type, String quantity, String price) throws IOException {
+        long clOrdId = ++lastClOrdId;
+        synchronized (pendingOrders)
         {
-            byte[] res = new byte[1000];
-            int bytesRead = this.inputStream.read(res);
-            if (bytesRead == -1)
-                System.exit(0);
-            if (bytesRead > 0)
-            {
-                res = ByteBuffer.wrap(res).slice(0, bytesRead).array();
-                parser.consume(EngineFIX.toObjectArray(res));
-                if (parser.isComplete())
-                {
-                    if (parser.isSessionReject())
-                    {
-                        System.err.println("Maket is invalid");
-                        System.exit(1);
-                    }
-                    else if (parser.isBusinessReject())
-                        System.out.println("Transaction rejected");
-                    else if (parser.isSuccess())
-                        System.out.println("Transaction success");
-                    this.parser = new EngineFIX();
-                    break ;
-                }
-            }
+            pendingOrders.put(String.valueOf(clOrdId), type + " " + quantity + " " + instrument + " at " + price);
+        }
+        encodeFixOrderMessage(clOrdId, market, instrument, type, quantity, price);
+        sendRequest(orderBuffer);
+    }
+
+    // Once the input is closed, the orders still in flight are waited for before leaving.
+    private void awaitPendingOrders() throws InterruptedException {
+        synchronized (pendingOrders)
+        {
+            while (!pendingOrders.isEmpty())
+                pendingOrders.wait();
         }
     }
 
+    private static String readLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null)
+            throw new EOFException();
+        return line;
+    }
+
     public void start() {
         try {
             BufferedReader userInputReader = new BufferedReader(new InputStreamReader(System.in));
@@ -161,7 +223,7 @@ public class Broker {
 
             do {
                 System.out.print(prompt);
-                market = userInputReader.readLine();
+                market = readLine(userInputReader);
                 prompt = "Can't connect to this market\nEnter target market name: ";
                 connect();
                 sendIdentificationMessage(market);
@@ -169,13 +231,17 @@ public class Broker {
 
             System.out.println("Assigned unique id: " + uniqueId);
 
+            Thread reader = new Thread(this::readMessages, "router-reader");
+            reader.setDaemon(true);
+            reader.start();
+
             while (true)
             {
                 String instrument;
                 prompt = "Enter instrument name: ";
                 do {
                     System.out.print(prompt);
-                    instrument = userInputReader.readLine();
+                    instrument = readLine(userInputReader);
                     prompt = "Instrument name can't be empty\nEnter instrument name: ";
                 } while (instrument.length() <= 0);
 
@@ -183,7 +249,7 @@ public class Broker {
                 prompt = "Enter order type (Buy/Sell): ";
                 do {
                     System.out.print(prompt);
-                    type = userInputReader.readLine().toLowerCase();
+                    type = readLine(userInputReader).toLowerCase();
                     prompt = "Order type should be either Buy or Sell\nEnter order type (Buy/Sell): ";
                 } while (type.compareTo("buy") != 0 && type.compareTo("sell") != 0);
 
@@ -191,7 +257,7 @@ public class Broker {
                 prompt = "Enter quantity: ";
                 do {
                     System.out.print(prompt);
-                    quantity = userInputReader.readLine();
+                    quantity = readLine(userInputReader);
                     prompt = "Please enter a valid integer for quantity\nEnter quantity: ";
                 } while (!isInteger(quantity));
 
@@ -199,13 +265,17 @@ public class Broker {
                 prompt = "Enter price: ";
                 do {
                     System.out.print(prompt);
-                    price = userInputReader.readLine();
+                    price = readLine(userInputReader);
                     prompt = "Please enter a valid integer for price\nEnter price: ";
                 } while (!isInteger(price));
 
-                String FIXMessage = constructFixOrderMessage(market, instrument, type, quantity, price);
-                sendRequest(FIXMessage);
-                readResponse();
+                sendOrder(market, instrument, type, quantity, price);
+            }
+        } catch (EOFException e) {
+            try {
+                awaitPendingOrders();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
             }
         } catch (Exception e) {
             System.err.println(e.getMessage());
@@ -0,0 +1,96 @@
+package broker;
+
+// Histogram of latencies in nanoseconds with the layout of HdrHistogram: values are counted in buckets
+// of powers of two, each split in subBucketCount equal parts, so any value is known to about 0.1%
+// whatever its magnitude, with a fixed array of counts and no allocation when recording.
+// Not thread safe, every session records into its own and they are added up at the end.
+public class LatencyHistogram {
+    private static final int subBucketBits = 11;
+    private static final int subBucketCount = 1 << subBucketBits;
+    private static final int subBucketHalfCount = subBucketCount / 2;
+    private static final long subBucketMask = subBucketCount - 1;
+
+    // Enough buckets for any positive long.
+    private static final int bucketCount = 64 - subBucketBits + 1;
+
+    private final long[] counts;
+    private long totalCount;
+    private long sum;
+    private long maxValue;
+    private long minValue;
+
+    public LatencyHistogram()
+    {
+        this.counts = new long[(bucketCount + 1) * subBucketHalfCount];
+        this.minValue = Long.MAX_VALUE;
+    }
+
+    private static int indexOf(long value)
+    {
+        int bucket = 64 - Long.numberOfLeadingZeros(value | subBucketMask) - subBucketBits;
+        int subBucket = (int) (value >>> bucket);
+        return bucket * subBucketHalfCount + subBucket;
+    }
+
+    // Highest value counted at index, percentiles are reported with it so they are never under the truth.
+    private static long highestValueAt(int index)
+    {
+        int bucket = Math.max(0, index / subBucketHalfCount - 1);
+        long subBucket = index - (long) bucket * subBucketHalfCount;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+
+    // Negative values, from a clock going back, are counted as 0.
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        maxValue = Math.max(maxValue, value);
+        minValue = Math.min(minValue, value);
+    }
+
+    public void add(LatencyHistogram other)
+    {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+        sum += other.sum;
+        maxValue = Math.max(maxValue, other.maxValue);
+        minValue = Math.min(minValue, other.minValue);
+    }
+
+    // Smallest value that percentile percent of the recorded values are lower than or equal to.
+    public long getValueAtPercentile(double percentile)
+    {
+        if (totalCount == 0)
+            return 0;
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            count += counts[i];
+            if (count >= countAtPercentile)
+                return Math.min(highestValueAt(i), maxValue);
+        }
+        return maxValue;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    public long getMinValue() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+}
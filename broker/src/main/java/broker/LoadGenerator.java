@@ -0,0 +1,331 @@
+package broker;
+
+import engineFIX.BadTagValueException;
+import engineFIX.EngineFIX;
+import engineFIX.FixEncoder;
+import engineFIX.FixFramer;
+import engineFIX.FixMessageView;
+import engineFIX.TagFormatException;
+import engineFIX.UnsupportedTagException;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless broker putting the router and markets under load: one broker session per market, since a
+// market is paired with a single broker, each sending orders at its share of the target rate without
+// waiting for the answers. The latency of an order is from the time it was due to be sent to the time its
+// answer is read, so a sender falling behind schedule shows in the latencies instead of lowering the rate.
+// Orders sent during the warmup are not recorded. Once done, the percentiles of every session are added up
+// and printed, with a last "summary" line of key=value pairs meant to be compared between builds.
+public class LoadGenerator {
+    private static final int brokerPort = 5000;
+    private static final String host = "localhost";
+
+    // Sleeping for less than this is not precise, the sender spins instead.
+    private static final long spinNanos = 50_000;
+
+    // How long answers to the last orders are waited for once the run is over.
+    private static final long drainNanos = 5_000_000_000L;
+
+    private final List<String> markets;
+    private final int rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int buyPercent;
+    private final String[] instruments;
+
+    public LoadGenerator(List<String> markets, int rate, int durationSeconds, int warmupSeconds, int buyPercent, String[] instruments)
+    {
+        this.markets = markets;
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.buyPercent = buyPercent;
+        this.instruments = instruments;
+    }
+
+    // One broker connection, with a thread sending its orders and one reading the answers.
+    private class Session {
+        // Send times by ClOrdID modulo the size, the sender waits rather than have more orders than that in flight.
+        private static final int maxInFlight = 1 << 16;
+
+        // Send time of the orders of the warmup, which are not recorded.
+        private static final long notRecorded = Long.MIN_VALUE;
+
+        private final String market;
+        private final String name;
+        private Socket socket;
+        private InputStream inputStream;
+        private OutputStream outputStream;
+        private String uniqueId;
+
+        private final EngineFIX parser;
+        private final FixFramer framer;
+        private final byte[] readBuffer;
+        private final FixEncoder encoder;
+        private final ByteBuffer orderBuffer;
+
+        private final long[] sendTimes;
+        private final LatencyHistogram histogram;
+
+        // sent is written by the sender and answered by the reader, the other threads only read them.
+        // The counts of answers are only read once the reader stopped.
+        private volatile long sent;
+        private volatile long answered;
+        // When the last order due after the warmup was sent, and when the last one was answered.
+        private volatile long lastSentAt;
+        private volatile long lastAnsweredAt;
+        private long successes;
+        private long rejects;
+        private volatile boolean closed;
+
+        Session(String market, int index)
+        {
+            this.market = market;
+            this.name = "load" + index;
+            this.parser = new EngineFIX();
+            this.framer = new FixFramer();
+            this.readBuffer = new byte[64 * 1024];
+            this.encoder = new FixEncoder();
+            this.orderBuffer = ByteBuffer.allocate(256);
+            this.sendTimes = new long[maxInFlight];
+            this.histogram = new LatencyHistogram();
+        }
+
+        private boolean readMessage() throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
+            while (!framer.next())
+            {
+                int bytesRead = inputStream.read(readBuffer);
+                if (bytesRead == -1)
+                    return false;
+                framer.consume(readBuffer, 0, bytesRead);
+            }
+            parser.reset();
+            parser.consume(framer.getBuffer(), framer.getOffset(), framer.getLength());
+            return true;
+        }
+
+        void logon() throws Exception {
+            socket = new Socket(host, brokerPort);
+            socket.setTcpNoDelay(true);
+            inputStream = socket.getInputStream();
+            outputStream = new BufferedOutputStream(socket.getOutputStream());
+            write(EngineFIX.constructIdentificationMessage(null, name, market).getBytes());
+            if (!readMessage() || parser.isSessionReject())
+                throw new IOException("Market (" + market + ") refused " + name + ", is it running and free?");
+            uniqueId = parser.getSenderSubID();
+        }
+
+        // The reader answers test requests while the sender writes orders.
+        private synchronized void write(byte[] message) throws IOException {
+            outputStream.write(message);
+            outputStream.flush();
+        }
+
+        private synchronized void write(ByteBuffer message) throws IOException {
+            outputStream.write(message.array(), 0, message.position());
+            outputStream.flush();
+        }
+
+        void send(long interval, long start, long end, long measureStart)
+        {
+            SplittableRandom random = new SplittableRandom();
+            try {
+                for (long clOrdId = 1; ; clOrdId++)
+                {
+                    long due = start + (clOrdId - 1) * interval;
+                    if (due >= end)
+                        break ;
+                    long now;
+                    while ((now = System.nanoTime()) < due)
+                    {
+                        if (due - now > spinNanos)
+                            LockSupport.parkNanos(due - now - spinNanos);
+                    }
+                    while (clOrdId - answered > maxInFlight && !closed)
+                        LockSupport.parkNanos(spinNanos);
+
+                    sendTimes[(int) (clOrdId % maxInFlight)] = due >= measureStart ? due : notRecorded;
+                    String side = random.nextInt(100) < buyPercent ? "buy" : "sell";
+                    encoder.begin(orderBuffer.clear(), 'D')
+                            .field(49, name)
+                            .field(50, uniqueId)
+                            .field(56, market)
+                            .field(11, clOrdId)
+                            .field(55, instruments[random.nextInt(instruments.length)])
+                            .field(54, side)
+                            .field(38, 1 + random.nextInt(10))
+                            .field(44, 1 + random.nextInt(100))
+                            .end();
+                    write(orderBuffer);
+                    if (due >= measureStart)
+                        lastSentAt = System.nanoTime();
+                    sent = clOrdId;
+                }
+            } catch (IOException e) {
+                if (!closed)
+                    System.err.println(name + ": " + e.getMessage());
+            }
+        }
+
+        void read()
+        {
+            try {
+                while (readMessage())
+                {
+                    if (parser.isTestRequest())
+                        write(EngineFIX.constructHeartbeatMessage(uniqueId, parser.getTestReqID()).getBytes());
+                    else if (parser.isSuccess() || parser.isBusinessReject())
+                    {
+                        long now = System.nanoTime();
+                        // Without a ClOrdID the answer cannot be matched to the order it belongs to, it only
+                        // frees its place in the window.
+                        FixMessageView view = parser.getView();
+                        long due = view.has(11) ? sendTimes[(int) Math.floorMod(view.getLong(11), (long) maxInFlight)] : notRecorded;
+                        if (due != notRecorded)
+                        {
+                            histogram.record(now - due);
+                            lastAnsweredAt = now;
+                            if (parser.isSuccess())
+                                successes++;
+                            else
+                                rejects++;
+                        }
+                        answered = answered + 1;
+                    }
+                    else if (parser.isSessionReject())
+                    {
+                        System.err.println(name + ": session rejected by the router");
+                        return ;
+                    }
+                }
+            } catch (Exception e) {
+                if (!closed)
+                    System.err.println(name + ": " + e.getMessage());
+            }
+        }
+
+        void close()
+        {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway.
+            }
+        }
+    }
+
+    public void start() {
+        List<Session> sessions = new ArrayList<>();
+        try {
+            for (int i = 0; i < markets.size(); i++)
+            {
+                Session session = new Session(markets.get(i), i + 1);
+                session.logon();
+                sessions.add(session);
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            sessions.forEach(Session::close);
+            return ;
+        }
+
+        long interval = 1_000_000_000L * sessions.size() / rate;
+        long start = System.nanoTime() + 100_000_000L;
+        long measureStart = start + warmupSeconds * 1_000_000_000L;
+        long end = measureStart + durationSeconds * 1_000_000_000L;
+        System.out.println("Sending " + rate + " orders/s through " + sessions.size() + " sessions for "
+                + durationSeconds + " s, after " + warmupSeconds + " s of warmup.");
+
+        List<Thread> senders = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < sessions.size(); i++)
+        {
+            Session session = sessions.get(i);
+            // Sessions are spread over the interval instead of sending at the same instants.
+            long sessionStart = start + interval * i / sessions.size();
+            Thread reader = new Thread(session::read, session.name + "-reader");
+            Thread sender = new Thread(() -> session.send(interval, sessionStart, end, measureStart), session.name + "-sender");
+            reader.setDaemon(true);
+            reader.start();
+            sender.start();
+            readers.add(reader);
+            senders.add(sender);
+        }
+
+        try {
+            for (Thread sender : senders)
+                sender.join();
+            long drainEnd = System.nanoTime() + drainNanos;
+            for (Session session : sessions)
+            {
+                while (session.answered < session.sent && System.nanoTime() < drainEnd)
+                    LockSupport.parkNanos(1_000_000);
+            }
+            // Readers stop on the closed sockets, their counts are read once they did.
+            sessions.forEach(Session::close);
+            for (Thread reader : readers)
+                reader.join(1000);
+            report(sessions, measureStart);
+        } catch (InterruptedException e) {
+            sessions.forEach(Session::close);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String micros(long nanos)
+    {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    // Rates are over the time orders were actually sent and answered after the warmup, not the drain wait.
+    private void report(List<Session> sessions, long measureStart)
+    {
+        LatencyHistogram total = new LatencyHistogram();
+        long sent = 0;
+        long answered = 0;
+        long successes = 0;
+        long rejects = 0;
+        long lastSentAt = measureStart;
+        long lastAnsweredAt = measureStart;
+        for (Session session : sessions)
+        {
+            lastSentAt = Math.max(lastSentAt, session.lastSentAt);
+            lastAnsweredAt = Math.max(lastAnsweredAt, session.lastAnsweredAt);
+            total.add(session.histogram);
+            sent += session.sent;
+            answered += session.answered;
+            successes += session.successes;
+            rejects += session.rejects;
+        }
+        long measured = total.getTotalCount();
+        long sendNanos = lastSentAt - measureStart;
+        long answerNanos = lastAnsweredAt - measureStart;
+        double throughput = answerNanos > 0 ? measured * 1e9 / answerNanos : 0;
+
+        System.out.println("Orders sent: " + sent + ", answered: " + answered + ", unanswered: " + (sent - answered));
+        System.out.println("Measured: " + measured + " (success " + successes + ", rejected " + rejects + "), "
+                + String.format("%.1f", throughput) + " orders/s over " + String.format("%.3f", answerNanos / 1e9)
+                + " s to the last answer, sent over " + String.format("%.3f", sendNanos / 1e9) + " s");
+        System.out.println("Latency (us): min " + micros(total.getMinValue())
+                + ", mean " + micros((long) total.getMean())
+                + ", p50 " + micros(total.getValueAtPercentile(50))
+                + ", p90 " + micros(total.getValueAtPercentile(90))
+                + ", p99 " + micros(total.getValueAtPercentile(99))
+                + ", p99.9 " + micros(total.getValueAtPercentile(99.9))
+                + ", max " + micros(total.getMaxValue()));
+        System.out.println("summary sessions=" + sessions.size() + " rate=" + rate + " duration_s=" + durationSeconds
+                + " sent=" + sent + " unanswered=" + (sent - answered) + " measured=" + measured
+                + " throughput=" + String.format("%.1f", throughput)
+                + " p50_us=" + micros(total.getValueAtPercentile(50))
+                + " p99_us=" + micros(total.getValueAtPercentile(99))
+                + " p999_us=" + micros(total.getValueAtPercentile(99.9))
+                + " max_us=" + micros(total.getMaxValue()));
+    }
+}
@@ -1,21 +1,33 @@
 import logger.Logger;
 import engineFIX.BadTagValueException;
 import engineFIX.EngineFIX;
+import engineFIX.FixEncoder;
+import engineFIX.FixTemplate;
+import engineFIX.FixFramer;
 import engineFIX.TagFormatException;
 import engineFIX.UnsupportedTagException;
 import market.Instrument;
 import market.Market;
+import market.OrderBook;
+import market.OrderRing;
 
 import java.io.*;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 
+// Orders go through three stages, each on its own thread, handing them over through an OrderRing:
+// the network stage reads, frames and parses them, the matching stage is the only thread trading on the
+// market, and the writing stage encodes the answers and logs them. Under load every stage takes all the
+// messages waiting for it at once, the writer answers them with a single flush.
 public class Server {
     private static final int marketPort = 5001;
     private static final String host = "localhost";
     private static final String FIXVersion = "FIX 4.2";
     private static final char delimiter = 0x1;
 
+    // Messages between the network stage and the writing stage at most.
+    private static final int ringSize = 1024;
+
     private final String marketName;
 
     private InputStream inputStream;
@@ -23,117 +35,258 @@ public class Server {
 
     private String uniqueId;
     private EngineFIX parser;
+    private final FixFramer framer;
+    private final byte[] readBuffer;
+
+    // Ids handed out by the router are this long.
+    private static final int uniqueIdLength = 6;
+
+    // Answers to orders only differ by the id and the ClOrdID, they are copied from templates built once.
+    private static final FixTemplate rejectTemplate = new FixTemplate('j', 50, uniqueIdLength);
+    private static final FixTemplate successTemplate = new FixTemplate('s', 50, uniqueIdLength);
+
+    // Answers are encoded in place, one at a time, then copied to the output stream by the writing stage.
+    private final FixEncoder encoder;
+    private final ByteBuffer writeBuffer;
 
     private Market market;
 
+    private final OrderRing ring;
+    // Next sequence the network stage fills, the ones before it up to the published cursor are not published yet.
+    private long nextSequence;
+
     Server(String name)
     {
         this.marketName = name;
         this.parser = new EngineFIX();
+        this.framer = new FixFramer();
+        this.readBuffer = new byte[1000];
+        this.encoder = new FixEncoder();
+        this.writeBuffer = ByteBuffer.allocate(1000);
         this.uniqueId = null;
         this.market = new Market();
+        this.ring = new OrderRing(ringSize);
+        this.nextSequence = 0;
     }
 
     public void connect() throws IOException {
         Socket socket = new Socket(host, marketPort);
+        // Answers are flushed as soon as a read is handled, they should not wait for the router to acknowledge the last ones.
+        socket.setTcpNoDelay(true);
         inputStream = socket.getInputStream();
-        outputStream = socket.getOutputStream();
+        // Answers are flushed once every message available to the writing stage was answered.
+        outputStream = new BufferedOutputStream(socket.getOutputStream());
     }
 
-    public void sendRejectMessage() throws IOException {
-        String message = EngineFIX.getFixBusinessRejectMessage(uniqueId);
-        outputStream.write(message.getBytes());
+    private void write() throws IOException {
+        outputStream.write(writeBuffer.array(), 0, writeBuffer.position());
     }
 
-    public void sendSuccessMessage() throws IOException {
-        String message = EngineFIX.constructSuccessMessage(this.uniqueId);
-        outputStream.write(message.getBytes());
+    // The ClOrdID of the order being answered is copied back as is, so the broker knows which of its orders it is.
+    public void sendRejectMessage(OrderRing.Slot slot) throws IOException {
+        rejectTemplate.write(writeBuffer.clear(), uniqueId, slot.view, 11);
+        write();
+    }
+
+    public void sendSuccessMessage(OrderRing.Slot slot) throws IOException {
+        successTemplate.write(writeBuffer.clear(), uniqueId, slot.view, 11);
+        write();
+    }
+
+    // Answers the test request of the slot with its TestReqID.
+    public void sendHeartbeatMessage(OrderRing.Slot slot) throws IOException {
+        encoder.begin(writeBuffer.clear(), '0').field(50, uniqueId).field(112, slot.view, 112).end();
+        write();
     }
 
     public void sendIdentificationMessage() throws IOException {
         String message = EngineFIX.constructIdentificationMessage(uniqueId, marketName, marketName);
         outputStream.write(message.getBytes());
+        outputStream.flush();
+    }
+
+    // Hands whatever the router sent to the framer, which splits it into messages.
+    private void read() throws IOException {
+        int bytesRead = this.inputStream.read(readBuffer);
+        if (bytesRead == -1)
+        {
+            Logger.logError("Router closed the connection");
+            System.exit(1);
+        }
+        framer.consume(readBuffer, 0, bytesRead);
+    }
+
+    private void parseMessage() throws UnsupportedTagException, BadTagValueException, TagFormatException {
+        parser.reset();
+        parser.consume(framer.getBuffer(), framer.getOffset(), framer.getLength());
     }
 
     private void readUniqueId() throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
-        while (!parser.isComplete())
+        while (!framer.next())
+            read();
+        parseMessage();
+        if (parser.isSessionReject())
+        {
+            Logger.logError("Identification rejected");
+            System.exit(1);
+        }
+        this.uniqueId = parser.getSenderSubID();
+    }
+
+    // The broker does not wait for an answer before sending its next order, a read may hold several
+    // messages, and the last one may be cut short: the framer keeps it until the next read completes it.
+    // The messages of a read are published together.
+    private void readMessages() throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
+        read();
+        while (framer.next())
         {
-            byte[] res = new byte[1000];
-            int bytesRead = this.inputStream.read(res);
-            if (bytesRead > 0)
+            parseMessage();
+            handleMessage();
+        }
+        ring.published.set(nextSequence - 1);
+    }
+
+    // The next slot, publishing what was filled so far first if the ring is full, as the stages after
+    // this one would otherwise never free a slot.
+    private OrderRing.Slot claim()
+    {
+        if (ring.answered.get() < nextSequence - ring.size())
+            ring.published.set(nextSequence - 1);
+        OrderRing.Slot slot = ring.claim(nextSequence++);
+        slot.setMessage(framer.getBuffer(), framer.getOffset(), framer.getLength());
+        return slot;
+    }
+
+    // Network stage: checks the message and passes it on, invalid orders are rejected in turn with the others.
+    private void handleMessage() {
+        // The router checks we are alive when we have been quiet for a while.
+        if (parser.isTestRequest() || parser.isHeartbeat())
+        {
+            if (parser.isTestRequest())
+                claim().kind = OrderRing.testRequest;
+            return ;
+        }
+
+        String instrumentName = parser.getSymbol();
+        int quantity = parser.getOrderQty();
+        int price = parser.getPrice();
+        String side = parser.getSide();
+        boolean buy = "buy".equals(side);
+        int timeInForce = timeInForce(parser.getTimeInForce(), buy);
+
+        OrderRing.Slot slot = claim();
+        if (quantity <= 0 || price < 0 || instrumentName == null || side == null
+                || (!buy && !side.equals("sell")) || timeInForce == -1)
+        {
+            slot.kind = OrderRing.reject;
+            return ;
+        }
+        slot.kind = OrderRing.order;
+        slot.symbol = instrumentName;
+        slot.buy = buy;
+        slot.price = price;
+        slot.quantity = quantity;
+        slot.timeInForce = timeInForce;
+    }
+
+    // TimeInForce (59): Day (0) and GoodTillCancel (1) both rest until filled, the market has no trading day.
+    // Brokers that leave it out get what the market always did: a buy is filled completely at once or
+    // rejected, a sell rests until bought. -1 for what the market does not support.
+    private static int timeInForce(String value, boolean buy)
+    {
+        if (value == null)
+            return buy ? OrderBook.fillOrKill : OrderBook.goodTillCancel;
+        switch (value)
+        {
+            case "0":
+            case "1":
+                return OrderBook.goodTillCancel;
+            case "3":
+                return OrderBook.immediateOrCancel;
+            case "4":
+                return OrderBook.fillOrKill;
+            default:
+                return -1;
+        }
+    }
+
+    // Matching stage: the only thread touching the market once the pipeline runs.
+    private void match()
+    {
+        for (long next = 0; ; )
+        {
+            long available = ring.published.waitFor(next);
+            for (; next <= available; next++)
             {
-                res = ByteBuffer.wrap(res).slice(0, bytesRead).array();
-                parser.consume(EngineFIX.toObjectArray(res));
-                if (parser.isComplete())
-                {
-                    if (parser.isSessionReject())
-                    {
-                        Logger.logError("Identification rejected");
-                        System.exit(1);
-                    }
-                    this.uniqueId = parser.getSenderSubID();
-                    this.parser = new EngineFIX();
-                    break ;
-                }
+                OrderRing.Slot slot = ring.get(next);
+                if (slot.kind == OrderRing.order)
+                    match(slot);
             }
+            ring.matched.set(available);
         }
     }
 
-    private void readResponse() throws IOException, UnsupportedTagException, BadTagValueException, TagFormatException {
-        while (!parser.isComplete())
+    private void match(OrderRing.Slot slot)
+    {
+        // if price is 0, we will buy or sell the instrument at market price.
+        if (slot.price == 0)
         {
-            byte[] res = new byte[1000];
-            int bytesRead = this.inputStream.read(res);
-            if (bytesRead > 0)
+            Instrument marketInstrument = market.getInstrumentData(new Instrument(slot.symbol));
+            if (marketInstrument != null)
+                slot.price = marketInstrument.getPrice();
+        }
+        int filled = market.submit(slot.symbol, slot.buy, slot.price, slot.quantity, slot.timeInForce);
+        slot.filled = filled;
+        // An order left resting in the book is accepted, one dropped without being filled is not.
+        slot.accepted = slot.timeInForce == OrderBook.goodTillCancel ? filled >= 0
+                : slot.timeInForce == OrderBook.immediateOrCancel ? filled > 0 : filled == slot.quantity;
+    }
+
+    // Writing stage: answers everything matched, then flushes once.
+    private void answer()
+    {
+        try {
+            for (long next = 0; ; )
             {
-                res = ByteBuffer.wrap(res).slice(0, bytesRead).array();
-                parser.consume(EngineFIX.toObjectArray(res));
-                if (parser.isComplete())
-                {
-                    String instrumentName = parser.getSymbol();
-                    Instrument instrument = new Instrument(instrumentName);
-                    int quantity = parser.getOrderQty();
-                    int price = parser.getPrice();
-                    String side = parser.getSide();
-
-                    if (quantity <= 0 || price < 0 || instrumentName == null || side == null)
-                    {
-                        sendRejectMessage();
-                        Logger.logError("Invalid buy/sell request");
-                        this.parser = new EngineFIX();
-                        break ;
-                    }
-
-                    // if price is 0, we will buy or sell the instrument at market price.
-                    if (price == 0)
-                    {
-                        Instrument marketInstrument = market.getInstrumentData(instrument);
-                        if (marketInstrument != null)
-                            price = marketInstrument.getPrice();
-                    }
-
-                    if (side.equals("buy"))
-                    {
-                        if (market.buy(instrument, price, quantity))
-                        {
-                            sendSuccessMessage();
-                            Logger.logSuccess("Successfully bought " + quantity + " of " + instrumentName + " at " + price);
-                        }
-                        else
-                        {
-                            sendRejectMessage();
-                            Logger.logError("Failed to buy " + quantity + " of (" + instrumentName + ") at " + price);
-                        }
-                    } else if (side.equals("sell"))
-                    {
-                        int actualSellingPrice = market.sell(instrument, price, quantity);
-                        sendSuccessMessage();
-                        Logger.logSuccess("Successfully sold " + quantity + " of " + instrumentName + " at " + actualSellingPrice);
-                    }
-                    parser = new EngineFIX();
-                    break ;
-                }
+                long available = ring.matched.waitFor(next);
+                for (; next <= available; next++)
+                    answer(ring.get(next));
+                outputStream.flush();
+                ring.answered.set(available);
             }
+        } catch (IOException e) {
+            Logger.logError("Failed to answer the router: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void answer(OrderRing.Slot slot) throws IOException {
+        if (slot.kind == OrderRing.testRequest)
+        {
+            sendHeartbeatMessage(slot);
+            return ;
+        }
+        if (slot.kind == OrderRing.reject)
+        {
+            sendRejectMessage(slot);
+            Logger.logError("Invalid buy/sell request");
+            return ;
+        }
+
+        String action = slot.buy ? "buy" : "sell";
+        if (slot.accepted)
+        {
+            sendSuccessMessage(slot);
+            if (slot.filled == slot.quantity)
+                Logger.logSuccess("Successfully " + (slot.buy ? "bought " : "sold ") + slot.quantity + " of " + slot.symbol + " at " + slot.price);
+            else
+                Logger.logSuccess("Filled " + slot.filled + " of " + slot.quantity + " " + slot.symbol + " to " + action + " at " + slot.price
+                        + (slot.timeInForce == OrderBook.goodTillCancel ? ", the rest is resting" : ", the rest is canceled"));
+        }
+        else
+        {
+            sendRejectMessage(slot);
+            Logger.logError("Failed to " + action + " " + slot.quantity + " of (" + slot.symbol + ") at " + slot.price);
         }
     }
 
@@ -145,8 +298,14 @@ public class Server {
             sendIdentificationMessage();
             readUniqueId();
             System.out.println("Assigned id: " + uniqueId);
+            Thread matcher = new Thread(this::match, marketName + "-matcher");
+            Thread writer = new Thread(this::answer, marketName + "-writer");
+            matcher.setDaemon(true);
+            writer.setDaemon(true);
+            matcher.start();
+            writer.start();
             while (true)
-                readResponse();
+                readMessages();
         } catch (Exception e)
         {
             System.out.println(e.getMessage());
@@ -1,89 +1,230 @@
 package market;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
+// Every instrument is traded in its own order book. The market starts as the only seller of the
+// instruments it lists, offering its whole supply at their price, brokers then trade against it and
+// against each other's resting orders.
+// Orders may come from several threads: instruments are spread over stripes by symbol, each with its own lock
+// and its own SymbolIndex, so orders on symbols of different stripes are matched in parallel while an
+// order is matched atomically against its instrument. Finding an instrument takes the same time however
+// many are listed.
 public class Market {
-    private final ArrayList<Instrument> instruments;
+    private static final int defaultStripeCount = 16;
+
+    // Instruments of the symbols hashing to the stripe, only used with the stripe locked. They are kept in
+    // columns indexed by symbol id rather than an object each: most instruments of a large market only ever
+    // have a single lot offered, a price and a quantity, and only get an OrderBook once an order has to rest
+    // at another price, or a buy has to rest at all.
+    private static final class Stripe {
+        private static final int initialCapacity = 8;
+
+        private final SymbolIndex symbols;
+        private String[] names;
+        // Until the instrument has a book, all that rests of it is lotQuantities[id] offered at lotPrices[id],
+        // and lastPrices[id] is the price it last traded at. Once it has one, the book holds everything.
+        private int[] lotPrices;
+        private long[] lotQuantities;
+        private int[] lastPrices;
+        private OrderBook[] books;
+
+        Stripe()
+        {
+            this.symbols = new SymbolIndex();
+            this.names = new String[initialCapacity];
+            this.lotPrices = new int[initialCapacity];
+            this.lotQuantities = new long[initialCapacity];
+            this.lastPrices = new int[initialCapacity];
+            this.books = new OrderBook[initialCapacity];
+        }
+
+        // -1 if the instrument is not traded here.
+        int find(String symbol)
+        {
+            return symbols.idOf(symbol);
+        }
+
+        int list(String symbol, int price, long quantity)
+        {
+            int id = symbols.add(symbol);
+            if (id == names.length)
+                grow();
+            names[id] = symbol;
+            lotPrices[id] = price;
+            lotQuantities[id] = quantity;
+            return id;
+        }
+
+        private void grow()
+        {
+            int capacity = names.length * 2;
+            names = Arrays.copyOf(names, capacity);
+            lotPrices = Arrays.copyOf(lotPrices, capacity);
+            lotQuantities = Arrays.copyOf(lotQuantities, capacity);
+            lastPrices = Arrays.copyOf(lastPrices, capacity);
+            books = Arrays.copyOf(books, capacity);
+        }
+
+        // Builds the book of the instrument the first time it needs one, its lot becomes the oldest ask.
+        OrderBook book(int id)
+        {
+            OrderBook book = books[id];
+            if (book == null)
+            {
+                book = new OrderBook(names[id], lastPrices[id]);
+                for (long left = lotQuantities[id]; left > 0; left -= Integer.MAX_VALUE)
+                    book.sell(lotPrices[id], (int) Math.min(left, Integer.MAX_VALUE), OrderBook.goodTillCancel);
+                lotQuantities[id] = 0;
+                books[id] = book;
+            }
+            return book;
+        }
+
+        Instrument data(int id)
+        {
+            OrderBook book = books[id];
+            long quantity = book == null ? lotQuantities[id] : book.getAskQuantity();
+            int price;
+            if (book == null)
+                price = quantity > 0 ? lotPrices[id] : lastPrices[id];
+            else
+                price = quantity > 0 ? book.getBestAsk() : book.getLastPrice();
+            return new Instrument(names[id], price, (int) Math.min(Integer.MAX_VALUE, quantity));
+        }
+
+        int lastPrice(int id)
+        {
+            return books[id] == null ? lastPrices[id] : books[id].getLastPrice();
+        }
+
+        int buy(int id, int price, int quantity, int timeInForce)
+        {
+            if (books[id] != null)
+                return books[id].buy(price, quantity, timeInForce);
+            long available = price >= lotPrices[id] ? lotQuantities[id] : 0;
+            if (timeInForce == OrderBook.fillOrKill && available < quantity)
+                return 0;
+            int filled = (int) Math.min(available, quantity);
+            if (filled > 0)
+            {
+                lotQuantities[id] -= filled;
+                lastPrices[id] = lotPrices[id];
+            }
+            // What is left can't fill against the lot, it rests as a bid.
+            if (filled < quantity && timeInForce == OrderBook.goodTillCancel)
+                filled += book(id).buy(price, quantity - filled, timeInForce);
+            return filled;
+        }
+
+        int sell(int id, int price, int quantity, int timeInForce)
+        {
+            if (books[id] != null)
+                return books[id].sell(price, quantity, timeInForce);
+            // Nobody bids on an instrument without a book, a sell only rests.
+            if (timeInForce != OrderBook.goodTillCancel)
+                return 0;
+            if (lotQuantities[id] == 0)
+                lotPrices[id] = price;
+            if (lotPrices[id] != price)
+                return book(id).sell(price, quantity, timeInForce);
+            lotQuantities[id] += quantity;
+            return 0;
+        }
+    }
+
+    private final Stripe[] stripes;
 
     public Market() {
-        this.instruments = new ArrayList<>();
-        Instrument temp = new Instrument("apple", 5, 50);
-        this.instruments.add(temp);
-        temp = new Instrument("google", 17, 100);
-        this.instruments.add(temp);
-        temp = new Instrument("microsoft", 12, 57);
-        this.instruments.add(temp);
-        temp = new Instrument("oracle", 8, 64);
-        this.instruments.add(temp);
+        this(defaultStripeCount);
     }
 
-    private boolean buyImplement(Instrument actualInstrument, int price, int quantity) {
-        boolean purchased = false;
-        int availablePrice = actualInstrument.getPrice();
-        int availableQuantity = actualInstrument.getQuantity();
-        if (price >= availablePrice && quantity <= availableQuantity) {
-            purchased = true;
-            actualInstrument.setQuantity(availableQuantity - quantity);
-        }
-        return purchased;
+    // stripeCount is a power of two up to 65536, 1 locks the whole market for every order.
+    public Market(int stripeCount) {
+        if (stripeCount < 1 || stripeCount > 65536 || Integer.bitCount(stripeCount) != 1)
+            throw new IllegalArgumentException("Stripe count must be a power of two up to 65536: " + stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+            stripes[i] = new Stripe();
+        list(new Instrument("apple", 5, 50));
+        list(new Instrument("google", 17, 100));
+        list(new Instrument("microsoft", 12, 57));
+        list(new Instrument("oracle", 8, 64));
     }
 
-    private int sellImplement(Instrument instrument, int price, int quantity)
+    // Other bits of the hash than the ones picking the slot in the stripe's SymbolIndex.
+    private Stripe stripeOf(String symbol)
     {
-        Instrument marketInstrument = findInstrument(instrument);
-        // We do not sell this instrument currently, Add it with the given price.
-        if (marketInstrument == null) {
-            instrument.setPrice(price);
-            instrument.setQuantity(quantity);
-            instruments.add(instrument);
-            return price;
-        }
-        if (marketInstrument.getQuantity() == 0)
+        int hash = symbol.hashCode() * 0x85EBCA6B;
+        return stripes[(hash >>> 16) & (stripes.length - 1)];
+    }
+
+    private void list(Instrument instrument)
+    {
+        Stripe stripe = stripeOf(instrument.getName());
+        synchronized (stripe)
         {
-            marketInstrument.setPrice(price);
-            marketInstrument.setQuantity(quantity);
-            return price;
+            stripe.list(instrument.getName(), instrument.getPrice(), instrument.getQuantity());
         }
-        // We do sell this instrument currently, add the quantity and adjust the price.
-        int newQuantity = marketInstrument.getQuantity() + quantity;
-        int newPrice = getAdjustedMarketPrice(instrument, price, quantity);
-        marketInstrument.setQuantity(newQuantity);
-        marketInstrument.setPrice(newPrice);
-        return newPrice;
     }
 
-    private Instrument findInstrument(Instrument instrument)
+    // null if the instrument is not traded here, its book is built if it had none yet. The book is not locked
+    // once returned, it is only safe to look at while no other thread trades.
+    public OrderBook getOrderBook(String symbol)
     {
-        for (Instrument temp : instruments) {
-            if (temp.compareTo(instrument) == 0)
-                return temp;
+        Stripe stripe = stripeOf(symbol);
+        synchronized (stripe)
+        {
+            int id = stripe.find(symbol);
+            return id == -1 ? null : stripe.book(id);
         }
-        return null;
     }
 
-    private int getAdjustedMarketPrice(Instrument instrument, int supplyPrice, int supplyQuantity)
+    // What the instrument is offered at: its best ask, or the last price it traded at once nothing is offered,
+    // and the quantity offered at any price. null if the instrument is not traded here.
+    public Instrument getInstrumentData(Instrument instrument)
     {
-        int marketPrice = this.findInstrument(instrument).getPrice();
-        int marketQuantity = this.findInstrument(instrument).getQuantity();
-        return (((marketPrice * marketQuantity) + (supplyPrice * supplyQuantity)) / (marketQuantity + supplyQuantity));
+        Stripe stripe = stripeOf(instrument.getName());
+        synchronized (stripe)
+        {
+            int id = stripe.find(instrument.getName());
+            return id == -1 ? null : stripe.data(id);
+        }
     }
 
-    public Instrument getInstrumentData(Instrument instrument)
+    // Returns the quantity filled at once, -1 if nobody can buy the instrument since it is not traded here.
+    // Selling an instrument that is not traded yet lists it.
+    public int submit(String symbol, boolean buy, int price, int quantity, int timeInForce)
     {
-        return findInstrument(instrument);
+        Stripe stripe = stripeOf(symbol);
+        synchronized (stripe)
+        {
+            int id = stripe.find(symbol);
+            if (id == -1)
+            {
+                if (buy)
+                    return -1;
+                id = stripe.list(symbol, price, 0);
+            }
+            return buy ? stripe.buy(id, price, quantity, timeInForce) : stripe.sell(id, price, quantity, timeInForce);
+        }
     }
 
+    // Bought only if enough is offered at price or less, nothing is bought otherwise.
     public boolean buy(Instrument instrument, int price, int quantity)
     {
-        Instrument marketInstrument = findInstrument(instrument);
-        if (marketInstrument == null)
-            return false;
-        else
-            return buyImplement(marketInstrument, price, quantity);
+        return submit(instrument.getName(), true, price, quantity, OrderBook.fillOrKill) == quantity;
     }
 
+    // Offers quantity at price until someone buys it, bids at price or more are filled first.
+    // Returns the order's own limit price if some of it rests in the book, which is not the best ask when cheaper
+    // lots are offered (getInstrumentData tells that one), or the last price it filled at if all of it was bought.
     public int sell(Instrument instrument, int price, int quantity)
     {
-        return this.sellImplement(instrument, price, quantity);
+        Stripe stripe = stripeOf(instrument.getName());
+        synchronized (stripe)
+        {
+            int filled = submit(instrument.getName(), false, price, quantity, OrderBook.goodTillCancel);
+            return filled == quantity ? stripe.lastPrice(stripe.find(instrument.getName())) : price;
+        }
     }
 }
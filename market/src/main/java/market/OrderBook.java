@@ -0,0 +1,178 @@
+package market;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Limit order book of one instrument: a ladder of price levels for bids and one for asks, each level
+// holding its orders in arrival order. An incoming order is matched against the best prices of the other
+// side first, and at a price against the oldest order first (price-time priority), filling as many resting
+// orders as it takes, partially filling the last one. What is left of it then rests in the book or is
+// dropped, depending on its time in force.
+public class OrderBook {
+    // Time in force of an order, as in tag 59 of FIX.
+    // Whatever is not filled rests in the book until other orders fill it.
+    public static final int goodTillCancel = 0;
+    // Whatever is not filled at once is dropped.
+    public static final int immediateOrCancel = 1;
+    // The order is filled completely at once or not at all.
+    public static final int fillOrKill = 2;
+
+    // Told about every resting order that is filled, partially or completely.
+    public interface FillListener {
+        void onFill(long orderId, int price, int quantity);
+    }
+
+    private final String symbol;
+
+    // Best bid is the highest price, best ask the lowest, both ladders start with the best level.
+    private final TreeMap<Integer, PriceLevel> bids;
+    private final TreeMap<Integer, PriceLevel> asks;
+    private long bidQuantity;
+    private long askQuantity;
+
+    private long lastOrderId;
+    private int lastPrice;
+    private FillListener fillListener;
+
+    public OrderBook(String symbol)
+    {
+        this(symbol, 0);
+    }
+
+    // For an instrument that already traded, at lastPrice the last time.
+    public OrderBook(String symbol, int lastPrice)
+    {
+        this.symbol = symbol;
+        this.bids = new TreeMap<>(Collections.reverseOrder());
+        this.asks = new TreeMap<>();
+        this.bidQuantity = 0;
+        this.askQuantity = 0;
+        this.lastOrderId = 0;
+        this.lastPrice = lastPrice;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public void setFillListener(FillListener listener) {
+        this.fillListener = listener;
+    }
+
+    // Id given to the last order submitted, ids are given in order from 1.
+    public long getLastOrderId() {
+        return lastOrderId;
+    }
+
+    // Price of the last fill, 0 before the first unless the book was built with one.
+    public int getLastPrice() {
+        return lastPrice;
+    }
+
+    // Returns the quantity filled at once.
+    public int buy(int price, int quantity, int timeInForce)
+    {
+        return submit(bids, asks, true, price, quantity, timeInForce);
+    }
+
+    public int sell(int price, int quantity, int timeInForce)
+    {
+        return submit(asks, bids, false, price, quantity, timeInForce);
+    }
+
+    private static boolean crosses(boolean buy, int price, int restingPrice)
+    {
+        return buy ? restingPrice <= price : restingPrice >= price;
+    }
+
+    // Quantity the other side has at prices the order accepts, counting no further than quantity.
+    private static long available(TreeMap<Integer, PriceLevel> opposite, boolean buy, int price, int quantity)
+    {
+        long available = 0;
+        for (PriceLevel level : opposite.values())
+        {
+            if (available >= quantity || !crosses(buy, price, level.getPrice()))
+                break ;
+            available += level.getTotalQuantity();
+        }
+        return available;
+    }
+
+    private int submit(TreeMap<Integer, PriceLevel> side, TreeMap<Integer, PriceLevel> opposite, boolean buy,
+                       int price, int quantity, int timeInForce)
+    {
+        long orderId = ++lastOrderId;
+        if (quantity <= 0)
+            return 0;
+        if (timeInForce == fillOrKill && available(opposite, buy, price, quantity) < quantity)
+            return 0;
+
+        int filled = 0;
+        while (filled < quantity && !opposite.isEmpty())
+        {
+            Map.Entry<Integer, PriceLevel> best = opposite.firstEntry();
+            if (!crosses(buy, price, best.getKey()))
+                break ;
+            PriceLevel level = best.getValue();
+            filled += level.fill(quantity - filled, fillListener);
+            lastPrice = level.getPrice();
+            if (level.isEmpty())
+                opposite.pollFirstEntry();
+        }
+
+        int rested = 0;
+        if (filled < quantity && timeInForce == goodTillCancel)
+        {
+            rested = quantity - filled;
+            side.computeIfAbsent(price, PriceLevel::new).add(orderId, rested);
+        }
+        if (buy)
+        {
+            bidQuantity += rested;
+            askQuantity -= filled;
+        }
+        else
+        {
+            askQuantity += rested;
+            bidQuantity -= filled;
+        }
+        return filled;
+    }
+
+    // 0 when the side is empty.
+    public int getBestBid() {
+        return bids.isEmpty() ? 0 : bids.firstKey();
+    }
+
+    public int getBestAsk() {
+        return asks.isEmpty() ? 0 : asks.firstKey();
+    }
+
+    public long getBidQuantity() {
+        return bidQuantity;
+    }
+
+    public long getAskQuantity() {
+        return askQuantity;
+    }
+
+    // Quantity resting at one price, on whichever side it is.
+    public long getQuantityAt(int price)
+    {
+        PriceLevel level = bids.get(price);
+        if (level == null)
+            level = asks.get(price);
+        return level == null ? 0 : level.getTotalQuantity();
+    }
+
+    public int getRestingOrderCount()
+    {
+        int count = 0;
+        for (PriceLevel level : bids.values())
+            count += level.getOrderCount();
+        for (PriceLevel level : asks.values())
+            count += level.getOrderCount();
+        return count;
+    }
+}
@@ -0,0 +1,144 @@
+package market;
+
+import engineFIX.FixMessageView;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Ring of preallocated slots the stages of the market pass messages through, each stage following the one
+// before it (as the LMAX disruptor does): the network stage copies a message into the next slot and
+// publishes it, the matching stage fills in the result of the order and marks it matched, the writing stage
+// answers it and marks it answered, after which the network stage may reuse the slot. Each stage is a single
+// thread that owns the slots between the cursor it follows and its own, so slots are handed over without
+// locks, and a stage that fell behind handles everything available at once instead of one slot at a time.
+public class OrderRing {
+    // Kinds of slot.
+    public static final int order = 0;
+    // A message to answer with a business reject without matching it, an invalid order.
+    public static final int reject = 1;
+    // A test request to answer with a heartbeat.
+    public static final int testRequest = 2;
+
+    private static final int initialMessageCapacity = 256;
+
+    // Fields are written by the stage owning the slot, the cursors make them visible to the next stage.
+    public static final class Slot {
+        public int kind;
+
+        // Copy of the message, for the answer to copy its ClOrdID or TestReqID from.
+        public final FixMessageView view;
+        private byte[] message;
+        private ByteBuffer messageBuffer;
+
+        public String symbol;
+        public boolean buy;
+        public int price;
+        public int quantity;
+        public int timeInForce;
+
+        // Set by the matching stage.
+        public int filled;
+        public boolean accepted;
+
+        Slot()
+        {
+            this.view = new FixMessageView();
+            this.message = new byte[initialMessageCapacity];
+            this.messageBuffer = ByteBuffer.wrap(message);
+        }
+
+        // Copies the message and indexes the copy, the slot only grows for an unusually long message.
+        public void setMessage(byte[] data, int offset, int length)
+        {
+            if (length > message.length)
+            {
+                message = new byte[Integer.highestOneBit(length) * 2];
+                messageBuffer = ByteBuffer.wrap(message);
+            }
+            System.arraycopy(data, offset, message, 0, length);
+            view.wrap(messageBuffer, 0, length);
+        }
+    }
+
+    // Last sequence a stage is done with, and the thread of the next stage if it is parked waiting for it.
+    public static final class Cursor {
+        // Checks before parking, a stage under load finds the next slot ready without parking.
+        private static final int spinTries = 200;
+
+        private final AtomicLong sequence;
+        private volatile Thread waiter;
+
+        Cursor()
+        {
+            this.sequence = new AtomicLong(-1);
+        }
+
+        public long get() {
+            return sequence.get();
+        }
+
+        // The waiter is read after the sequence is written, and written before the sequence is read again
+        // by the waiter: one of them always sees the other, a wake up is never missed.
+        public void set(long value)
+        {
+            sequence.set(value);
+            Thread thread = waiter;
+            if (thread != null)
+                LockSupport.unpark(thread);
+        }
+
+        // Waits until the cursor reaches value, returns where it is then, which may be further.
+        // A single thread waits on a cursor.
+        public long waitFor(long value)
+        {
+            long current;
+            for (int i = 0; i < spinTries; i++)
+            {
+                if ((current = sequence.get()) >= value)
+                    return current;
+                Thread.onSpinWait();
+            }
+            waiter = Thread.currentThread();
+            while ((current = sequence.get()) < value)
+                LockSupport.park(this);
+            waiter = null;
+            return current;
+        }
+    }
+
+    private final Slot[] slots;
+
+    public final Cursor published;
+    public final Cursor matched;
+    public final Cursor answered;
+
+    // size is a power of two.
+    public OrderRing(int size)
+    {
+        if (size < 1 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("Ring size must be a power of two: " + size);
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++)
+            slots[i] = new Slot();
+        this.published = new Cursor();
+        this.matched = new Cursor();
+        this.answered = new Cursor();
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    public Slot get(long sequence)
+    {
+        return slots[(int) sequence & (slots.length - 1)];
+    }
+
+    // Slot for the network stage to fill, once the message it held the last time around was answered.
+    public Slot claim(long sequence)
+    {
+        answered.waitFor(sequence - slots.length);
+        return get(sequence);
+    }
+}
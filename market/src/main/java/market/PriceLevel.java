@@ -0,0 +1,93 @@
+package market;
+
+import java.util.Arrays;
+
+// Orders resting at one price, oldest first. Their ids and remaining quantities are kept in two ring
+// arrays, adding and filling orders does not allocate once the level has grown to its usual depth.
+class PriceLevel {
+    private static final int initialCapacity = 8;
+
+    private final int price;
+    private long[] orderIds;
+    private int[] quantities;
+
+    // The oldest order is at head, capacity is a power of two.
+    private int head;
+    private int size;
+    private long totalQuantity;
+
+    PriceLevel(int price)
+    {
+        this.price = price;
+        this.orderIds = new long[initialCapacity];
+        this.quantities = new int[initialCapacity];
+        this.head = 0;
+        this.size = 0;
+        this.totalQuantity = 0;
+    }
+
+    int getPrice() {
+        return price;
+    }
+
+    long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    int getOrderCount() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void add(long orderId, int quantity)
+    {
+        if (size == orderIds.length)
+            grow();
+        int tail = (head + size) & (orderIds.length - 1);
+        orderIds[tail] = orderId;
+        quantities[tail] = quantity;
+        size++;
+        totalQuantity += quantity;
+    }
+
+    // Fills up to quantity from the oldest order on, an order is only left once completely filled.
+    // Returns the quantity filled.
+    int fill(int quantity, OrderBook.FillListener listener)
+    {
+        int filled = 0;
+        while (filled < quantity && size > 0)
+        {
+            int fillQuantity = Math.min(quantity - filled, quantities[head]);
+            quantities[head] -= fillQuantity;
+            filled += fillQuantity;
+            if (listener != null)
+                listener.onFill(orderIds[head], price, fillQuantity);
+            if (quantities[head] == 0)
+            {
+                head = (head + 1) & (orderIds.length - 1);
+                size--;
+            }
+        }
+        totalQuantity -= filled;
+        return filled;
+    }
+
+    // Doubles the rings, the oldest order moves back to index 0.
+    private void grow()
+    {
+        long[] grownIds = Arrays.copyOf(orderIds, orderIds.length * 2);
+        int[] grownQuantities = Arrays.copyOf(quantities, quantities.length * 2);
+        for (int i = 0; i < size; i++)
+        {
+            int index = (head + i) & (orderIds.length - 1);
+            grownIds[i] = orderIds[index];
+            grownQuantities[i] = quantities[index];
+        }
+        orderIds = grownIds;
+        quantities = grownQuantities;
+        head = 0;
+    }
+}
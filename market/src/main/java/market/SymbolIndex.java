@@ -0,0 +1,79 @@
+package market;
+
+// Gives every symbol an id, in the order they are added from 0, so what is kept per symbol can be held
+// in arrays indexed by id. Symbols are found by hash in an open addressing table with linear probing,
+// kept at most half full, so finding one does not depend on how many there are. Symbols are never removed.
+class SymbolIndex {
+    private static final int initialCapacity = 16;
+
+    // Slots of the table, capacity is a power of two. A null symbol is a free slot.
+    private String[] symbols;
+    private int[] ids;
+    private int size;
+
+    SymbolIndex()
+    {
+        this.symbols = new String[initialCapacity];
+        this.ids = new int[initialCapacity];
+        this.size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // String caches its hash code, the bits are mixed since the low ones pick the slot.
+    private static int slotOf(String symbol, int mask)
+    {
+        int hash = symbol.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    // -1 if the symbol was never added.
+    int idOf(String symbol)
+    {
+        int mask = symbols.length - 1;
+        for (int slot = slotOf(symbol, mask); symbols[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (symbols[slot].equals(symbol))
+                return ids[slot];
+        }
+        return -1;
+    }
+
+    // Id of the symbol, added if it is new.
+    int add(String symbol)
+    {
+        int mask = symbols.length - 1;
+        int slot = slotOf(symbol, mask);
+        for (; symbols[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (symbols[slot].equals(symbol))
+                return ids[slot];
+        }
+        symbols[slot] = symbol;
+        ids[slot] = size;
+        if (++size * 2 > symbols.length)
+            grow();
+        return size - 1;
+    }
+
+    private void grow()
+    {
+        String[] oldSymbols = symbols;
+        int[] oldIds = ids;
+        symbols = new String[oldSymbols.length * 2];
+        ids = new int[oldIds.length * 2];
+        int mask = symbols.length - 1;
+        for (int i = 0; i < oldSymbols.length; i++)
+        {
+            if (oldSymbols[i] == null)
+                continue ;
+            int slot = slotOf(oldSymbols[i], mask);
+            while (symbols[slot] != null)
+                slot = (slot + 1) & mask;
+            symbols[slot] = oldSymbols[i];
+            ids[slot] = oldIds[i];
+        }
+    }
+}
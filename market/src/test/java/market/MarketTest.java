@@ -2,7 +2,11 @@ package market;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
@@ -172,4 +176,111 @@ public class MarketTest {
         assertEquals(originalQuantity + 50, market.getInstrumentData(instrument).getQuantity());
         assertNotEquals(originalPrice, marketPrice);
     }
+
+    @Test
+    public void testConcurrentBuys() throws Exception
+    {
+        Market market = new Market();
+        Instrument instrument = new Instrument("apple");
+        int originalQuantity = market.getInstrumentData(instrument).getQuantity();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        // Many more buyers than there is to buy, each buy takes one or nothing.
+        for (int i = 0; i < 8; i++)
+        {
+            results.add(executor.submit(() -> {
+                int bought = 0;
+                for (int j = 0; j < 100; j++)
+                {
+                    if (market.buy(instrument, 5, 1))
+                        bought++;
+                }
+                return bought;
+            }));
+        }
+        int bought = 0;
+        for (Future<Integer> result : results)
+            bought += result.get();
+        executor.shutdown();
+        assertEquals(originalQuantity, bought);
+        assertEquals(0, market.getInstrumentData(instrument).getQuantity());
+    }
+
+    @Test
+    public void testConcurrentSymbols() throws Exception
+    {
+        int threads = 4;
+        int orders = 20_000;
+        Market market = new Market();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>();
+        // Every thread trades a symbol of its own and one they all share: it sells one and buys one back.
+        // Its own buys always fill, the shared ones fill unless other threads bought what was offered first.
+        for (int i = 0; i < threads; i++)
+        {
+            Instrument own = new Instrument("company" + i);
+            results.add(executor.submit(() -> {
+                int sharedBought = 0;
+                for (int j = 0; j < orders; j++)
+                {
+                    market.sell(own, 10, 1);
+                    assertTrue(market.buy(own, 10, 1));
+                    market.sell(new Instrument("shared"), 10, 1);
+                    if (market.buy(new Instrument("shared"), 10, 1))
+                        sharedBought++;
+                }
+                return sharedBought;
+            }));
+        }
+        int sharedBought = 0;
+        for (Future<Integer> result : results)
+            sharedBought += result.get();
+        executor.shutdown();
+
+        for (int i = 0; i < threads; i++)
+            assertEquals(0, market.getInstrumentData(new Instrument("company" + i)).getQuantity());
+        // Nothing is bought twice and nothing offered is lost.
+        assertEquals(threads * orders - sharedBought, market.getInstrumentData(new Instrument("shared")).getQuantity());
+    }
+
+    @Test
+    public void testRestingBuy()
+    {
+        Market market = new Market();
+        Instrument instrument = new Instrument("apple");
+        // 50 are offered at 5, the rest of the order waits for a seller at 5.
+        assertEquals(50, market.submit("apple", true, 5, 60, OrderBook.goodTillCancel));
+        assertEquals(0, market.getInstrumentData(instrument).getQuantity());
+        assertEquals(5, market.getInstrumentData(instrument).getPrice());
+        assertEquals(5, market.sell(instrument, 4, 10));
+        assertEquals(0, market.getInstrumentData(instrument).getQuantity());
+        assertEquals(0, market.getOrderBook("apple").getBidQuantity());
+    }
+
+    @Test
+    public void testRestingSellAboveBestAsk()
+    {
+        Market market = new Market();
+        Instrument instrument = new Instrument("apple");
+        // The order rests at its own price, behind the 50 offered at 5.
+        assertEquals(7, market.sell(instrument, 7, 3));
+        assertEquals(5, market.getInstrumentData(instrument).getPrice());
+        assertEquals(53, market.getInstrumentData(instrument).getQuantity());
+    }
+
+    @Test
+    public void testSellAtSeveralPrices()
+    {
+        Market market = new Market();
+        Instrument instrument = new Instrument("oracle");
+        market.sell(instrument, 8, 6);
+        market.sell(instrument, 7, 10);
+        assertEquals(80, market.getInstrumentData(instrument).getQuantity());
+        assertEquals(7, market.getInstrumentData(instrument).getPrice());
+        // The cheapest first, then the lot at 8.
+        assertTrue(market.buy(instrument, 8, 15));
+        assertEquals(1, market.getOrderBook("oracle").getRestingOrderCount());
+        assertEquals(65, market.getInstrumentData(instrument).getQuantity());
+        assertEquals(8, market.getInstrumentData(instrument).getPrice());
+    }
 }
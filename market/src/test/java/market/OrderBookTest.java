@@ -0,0 +1,127 @@
+package market;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OrderBookTest {
+    // Fills in the order the book reported them, as "orderId:price:quantity".
+    private static List<String> recordFills(OrderBook book)
+    {
+        List<String> fills = new ArrayList<>();
+        book.setFillListener((orderId, price, quantity) -> fills.add(orderId + ":" + price + ":" + quantity));
+        return fills;
+    }
+
+    @Test
+    public void testBestPriceFirst() {
+        OrderBook book = new OrderBook("apple");
+        book.sell(12, 5, OrderBook.goodTillCancel);
+        book.sell(10, 5, OrderBook.goodTillCancel);
+        book.sell(11, 5, OrderBook.goodTillCancel);
+        List<String> fills = recordFills(book);
+
+        assertEquals(10, book.buy(11, 12, OrderBook.goodTillCancel));
+        assertEquals(List.of("2:10:5", "3:11:5"), fills);
+        assertEquals(11, book.getLastPrice());
+        // The 2 that could not be bought at 11 rest as a bid.
+        assertEquals(11, book.getBestBid());
+        assertEquals(2, book.getBidQuantity());
+        assertEquals(12, book.getBestAsk());
+        assertEquals(5, book.getAskQuantity());
+    }
+
+    @Test
+    public void testOldestFirstAtAPrice() {
+        OrderBook book = new OrderBook("apple");
+        book.buy(20, 3, OrderBook.goodTillCancel);
+        book.buy(20, 4, OrderBook.goodTillCancel);
+        book.buy(20, 5, OrderBook.goodTillCancel);
+        List<String> fills = recordFills(book);
+
+        assertEquals(5, book.sell(20, 5, OrderBook.goodTillCancel));
+        assertEquals(List.of("1:20:3", "2:20:2"), fills);
+        // The second order keeps its place, partially filled.
+        fills.clear();
+        assertEquals(3, book.sell(19, 3, OrderBook.goodTillCancel));
+        assertEquals(List.of("2:20:2", "3:20:1"), fills);
+        assertEquals(4, book.getQuantityAt(20));
+        assertEquals(1, book.getRestingOrderCount());
+    }
+
+    @Test
+    public void testNoCross() {
+        OrderBook book = new OrderBook("google");
+        assertEquals(0, book.buy(99, 10, OrderBook.goodTillCancel));
+        assertEquals(0, book.sell(100, 10, OrderBook.goodTillCancel));
+        assertEquals(99, book.getBestBid());
+        assertEquals(100, book.getBestAsk());
+        assertEquals(2, book.getRestingOrderCount());
+        assertEquals(0, book.getLastPrice());
+    }
+
+    @Test
+    public void testImmediateOrCancel() {
+        OrderBook book = new OrderBook("oracle");
+        book.sell(8, 10, OrderBook.goodTillCancel);
+        assertEquals(10, book.buy(9, 15, OrderBook.immediateOrCancel));
+        assertEquals(0, book.getBidQuantity());
+        assertEquals(0, book.getAskQuantity());
+        assertEquals(0, book.getRestingOrderCount());
+        assertEquals(0, book.buy(9, 15, OrderBook.immediateOrCancel));
+    }
+
+    @Test
+    public void testFillOrKill() {
+        OrderBook book = new OrderBook("microsoft");
+        book.sell(57, 6, OrderBook.goodTillCancel);
+        book.sell(58, 6, OrderBook.goodTillCancel);
+        book.sell(60, 6, OrderBook.goodTillCancel);
+
+        // Only 12 are offered at 58 or less, nothing is bought.
+        assertEquals(0, book.buy(58, 13, OrderBook.fillOrKill));
+        assertEquals(18, book.getAskQuantity());
+        assertEquals(0, book.getBidQuantity());
+
+        assertEquals(12, book.buy(58, 12, OrderBook.fillOrKill));
+        assertEquals(60, book.getBestAsk());
+        assertEquals(6, book.getAskQuantity());
+    }
+
+    @Test
+    public void testOrderIds() {
+        OrderBook book = new OrderBook("apple");
+        book.sell(5, 1, OrderBook.goodTillCancel);
+        book.buy(1, 1, OrderBook.fillOrKill);
+        book.buy(5, 1, OrderBook.goodTillCancel);
+        assertEquals(3, book.getLastOrderId());
+    }
+
+    @Test
+    public void testManyOrdersAtAPrice() {
+        OrderBook book = new OrderBook("apple");
+        List<String> fills = recordFills(book);
+        // Partially filled between the adds, the oldest order is not at the start of the rings when they grow.
+        for (int i = 0; i < 100; i++)
+        {
+            book.sell(50, 2, OrderBook.goodTillCancel);
+            if (i % 10 == 9)
+                book.buy(50, 3, OrderBook.goodTillCancel);
+        }
+        assertEquals(200 - 30, book.getAskQuantity());
+
+        fills.clear();
+        assertEquals(170, book.buy(50, 1000, OrderBook.immediateOrCancel));
+        assertEquals(0, book.getRestingOrderCount());
+        long lastId = 0;
+        for (String fill : fills)
+        {
+            long id = Long.parseLong(fill.substring(0, fill.indexOf(':')));
+            assertTrue(id > lastId);
+            lastId = id;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package market;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class OrderRingTest {
+    @Test
+    public void testSlotsWrapAround() {
+        OrderRing ring = new OrderRing(4);
+        for (long sequence = 0; sequence < 10; sequence++)
+        {
+            OrderRing.Slot slot = ring.claim(sequence);
+            assertSame(ring.get(sequence), slot);
+            slot.quantity = (int) sequence;
+            ring.published.set(sequence);
+            ring.matched.set(sequence);
+            ring.answered.set(sequence);
+        }
+        assertEquals(9, ring.get(9).quantity);
+        assertSame(ring.get(1), ring.get(5));
+    }
+
+    @Test
+    public void testSlotMessage() {
+        OrderRing.Slot slot = new OrderRing(1).claim(0);
+        byte[] message = ("xx8=FIX.4.4\u00019=5\u000111=" + "7".repeat(300) + "\u0001").getBytes(StandardCharsets.ISO_8859_1);
+        slot.setMessage(message, 2, message.length - 2);
+        assertEquals("7".repeat(300), slot.view.getString(11));
+        slot.setMessage(message, 2, 12);
+        assertFalse(slot.view.has(11));
+    }
+
+    @Test
+    public void testBadSize() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderRing(6));
+    }
+
+    // Three stages on their own threads, through a ring much smaller than what goes through it.
+    @Test(timeout = 10_000)
+    public void testStagesInOrder() throws Exception
+    {
+        int count = 100_000;
+        OrderRing ring = new OrderRing(16);
+        long[] answers = new long[count];
+
+        Thread matcher = new Thread(() -> {
+            for (long next = 0; next < count; )
+            {
+                long available = ring.published.waitFor(next);
+                for (; next <= available; next++)
+                    ring.get(next).filled = ring.get(next).quantity * 2;
+                ring.matched.set(available);
+            }
+        });
+        Thread writer = new Thread(() -> {
+            for (long next = 0; next < count; )
+            {
+                long available = ring.matched.waitFor(next);
+                for (; next <= available; next++)
+                    answers[(int) next] = ring.get(next).filled;
+                ring.answered.set(available);
+            }
+        });
+        matcher.start();
+        writer.start();
+        for (long sequence = 0; sequence < count; sequence++)
+        {
+            ring.claim(sequence).quantity = (int) sequence;
+            ring.published.set(sequence);
+        }
+        matcher.join();
+        writer.join();
+        for (int i = 0; i < count; i++)
+            assertEquals(i * 2L, answers[i]);
+    }
+}
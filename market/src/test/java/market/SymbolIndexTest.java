@@ -0,0 +1,50 @@
+package market;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SymbolIndexTest {
+    @Test
+    public void testIdsInOrder() {
+        SymbolIndex index = new SymbolIndex();
+        assertEquals(0, index.add("apple"));
+        assertEquals(1, index.add("google"));
+        assertEquals(0, index.add("apple"));
+        assertEquals(2, index.size());
+        assertEquals(1, index.idOf("google"));
+        assertEquals(-1, index.idOf("oracle"));
+    }
+
+    @Test
+    public void testGrow() {
+        SymbolIndex index = new SymbolIndex();
+        for (int i = 0; i < 10_000; i++)
+            assertEquals(i, index.add("symbol" + i));
+        for (int i = 0; i < 10_000; i++)
+            assertEquals(i, index.idOf("symbol" + i));
+        assertEquals(-1, index.idOf("symbol10000"));
+    }
+
+    @Test
+    public void testSameHashCode() {
+        // "Aa" and "BB" have the same hash code, they end up in the same slot.
+        SymbolIndex index = new SymbolIndex();
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertEquals(0, index.add("Aa"));
+        assertEquals(1, index.add("BB"));
+        assertEquals(0, index.idOf("Aa"));
+        assertEquals(1, index.idOf("BB"));
+        assertEquals(-1, index.idOf("C#"));
+    }
+
+    @Test
+    public void testManyInstruments() {
+        Market market = new Market();
+        for (int i = 0; i < 1000; i++)
+            market.sell(new Instrument("symbol" + i), 10 + i, 5);
+        assertEquals(510, market.getInstrumentData(new Instrument("symbol500")).getPrice());
+        assertTrue(market.buy(new Instrument("symbol999"), 1009, 5));
+        assertEquals(50, market.getInstrumentData(new Instrument("apple")).getQuantity());
+    }
+}
@@ -1,8 +1,43 @@
 import server.Server;
 
 public class Main {
+    private static int parsePositive(String value, String name)
+    {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0)
+                return number;
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        System.err.println(name + " should be a positive integer");
+        System.exit(1);
+        return 0;
+    }
+
     public static void main(String[] args) {
-        Server server = new Server();
+        int reactors = 0;
+        boolean threads = false;
+        int heartbeat = 0;
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--reactors") && i + 1 < args.length)
+                reactors = parsePositive(args[++i], "Number of reactors");
+            // A thread per connection with blocking sockets instead of selectors.
+            else if (args[i].equals("--threads"))
+                threads = true;
+            // Seconds of silence before a client is sent a test request.
+            else if (args[i].equals("--heartbeat") && i + 1 < args.length)
+                heartbeat = parsePositive(args[++i], "Heartbeat interval");
+            else
+            {
+                System.err.println("Usage: router [--reactors N | --threads] [--heartbeat SECONDS]");
+                System.exit(1);
+            }
+        }
+        Server server = new Server(reactors, threads);
+        if (heartbeat > 0)
+            server.setHeartbeatInterval(heartbeat);
         server.start();
     }
 }
@@ -2,26 +2,83 @@ package client;
 
 
 import engineFIX.EngineFIX;
+import engineFIX.FixEncoder;
+import engineFIX.FixFramer;
 import logger.Logger;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.Random;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public abstract class Client implements Comparable<Client> {
     public EngineFIX                parser;
+
+    // Encodes what the router itself sends to this client, used on the client's executor.
+    private final FixEncoder        encoder;
     private final String            uniqueID;
-    private String                  name;
+    private volatile String         name;
     private final String            clientType;
     private final InetSocketAddress remoteAddress;
     private final SocketChannel     socket;
 
     private boolean                 targetFound;
     private boolean                 valid;
-    private boolean                 idSent;
+    private volatile boolean        idSent;
+
+    private volatile boolean        socketValid;
+
+    // When bytes were last read from the client and when it was sent the test request
+    // it has not answered yet, 0 if none (System.nanoTime()).
+    private volatile long           lastReceived;
+    private volatile long           testRequestSentAt;
+
+    // Until when the client can log on (System.nanoTime()), pushed back by a session reject.
+    private volatile long           logonDeadline;
+
+    // Runs the events of this client one at a time, in order.
+    private Executor                executor;
+
+    // Selector the socket is registered with, and the registration, which has this client attached.
+    private Selector                selector;
+    private SelectionKey            key;
+
+    // Raw bytes read from the client, the messages of a read are copied out of it one by one.
+    private ByteBuffer              inbound;
 
-    private boolean                 socketValid;
+    // Where the message being read starts in inbound, the messages before it were handled already.
+    private int                     start;
+
+    // Bytes of inbound already given to the parser. Once the message is complete it ends there,
+    // the bytes after it came in the same read and start the next message.
+    private int                     parsed;
+
+    // Messages waiting to be written to this client, written with a single gathering write.
+    // Guarded by outboundLock, a ReentrantLock so a virtual thread blocked writing under it does not pin
+    // its carrier. The count is also kept in a volatile field, read by peers without waiting for the lock.
+    private final ArrayDeque<ByteBuffer> outbound;
+    private final ReentrantLock     outboundLock;
+    private ByteBuffer[]            gatherBuffers;
+    private volatile int            outboundCount;
+
+    // Bytes handed over to this client and not written yet, counted by the thread handing them over,
+    // so the messages still waiting on the client's executor are counted as well as the queued ones.
+    private final AtomicLong        outboundBytes;
+
+    // Set while the client this one writes to has too much outstanding, its socket is not read meanwhile.
+    private final AtomicBoolean     readPaused;
+
+    // Thread per connection mode only, set when the write handler has to run after the read handler.
+    private boolean                 writeRequested;
 
     private int state;
 
@@ -43,6 +100,12 @@ public abstract class Client implements Comparable<Client> {
         this.idSent = false;
         this.clientType = null;
         this.socketValid = false;
+        this.encoder = new FixEncoder();
+        this.outbound = new ArrayDeque<>();
+        this.outboundLock = new ReentrantLock();
+        this.outboundBytes = new AtomicLong(0);
+        this.readPaused = new AtomicBoolean(false);
+        this.gatherBuffers = new ByteBuffer[0];
     }
 
     public Client(String uniqueID, InetSocketAddress address, SocketChannel socket, String clientType)
@@ -58,6 +121,13 @@ public abstract class Client implements Comparable<Client> {
         this.idSent = false;
         this.clientType = clientType;
         this.socketValid = true;
+        this.lastReceived = System.nanoTime();
+        this.encoder = new FixEncoder();
+        this.outbound = new ArrayDeque<>();
+        this.outboundLock = new ReentrantLock();
+        this.outboundBytes = new AtomicLong(0);
+        this.readPaused = new AtomicBoolean(false);
+        this.gatherBuffers = new ByteBuffer[4];
     }
 
     public static String generateRandomString(int len)
@@ -93,6 +163,10 @@ public abstract class Client implements Comparable<Client> {
         return socket;
     }
 
+    public FixEncoder getEncoder() {
+        return encoder;
+    }
+
     public void setMarketFound()
     {
         this.targetFound = true;
@@ -158,18 +232,238 @@ public abstract class Client implements Comparable<Client> {
         this.socketValid = socketValid;
     }
 
-    public void read(byte[] data, int size)
+    public long getLastReceived() {
+        return lastReceived;
+    }
+
+    public long getTestRequestSentAt() {
+        return testRequestSentAt;
+    }
+
+    public void setTestRequestSentAt(long testRequestSentAt) {
+        this.testRequestSentAt = testRequestSentAt;
+    }
+
+    public long getLogonDeadline() {
+        return logonDeadline;
+    }
+
+    public void setLogonDeadline(long logonDeadline) {
+        this.logonDeadline = logonDeadline;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Selector getSelector() {
+        return selector;
+    }
+
+    public void setSelector(Selector selector) {
+        this.selector = selector;
+    }
+
+    public SelectionKey getKey() {
+        return key;
+    }
+
+    public void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    public void setWriteRequested(boolean writeRequested) {
+        this.writeRequested = writeRequested;
+    }
+
+    public boolean takeWriteRequest()
+    {
+        boolean requested = this.writeRequested;
+        this.writeRequested = false;
+        return requested;
+    }
+
+    public void setInboundBuffer(ByteBuffer buffer)
+    {
+        this.inbound = buffer;
+    }
+
+    // Length of the message that was just parsed.
+    public int getInboundMessageLength()
+    {
+        return parsed - start;
+    }
+
+    // Copies the message that was just parsed into target, flipped and ready to be written. The bytes read
+    // after it stay where they are, nothing is moved until the buffer is full.
+    public ByteBuffer copyInboundMessage(ByteBuffer target)
+    {
+        ByteBuffer message = inbound.duplicate();
+        message.limit(parsed).position(start);
+        return target.put(message).flip();
+    }
+
+    // The message is counted before it is handed over, returns all that is outstanding for the client.
+    public long reserve(int bytes)
+    {
+        return this.outboundBytes.addAndGet(bytes);
+    }
+
+    // For a message that was counted and will not be written after all.
+    public void unreserve(int bytes)
+    {
+        this.outboundBytes.addAndGet(-bytes);
+    }
+
+    // The outbound queue is locked: with a thread per connection it is written from
+    // the threads of the peers forwarding to this client, not only from the client's own.
+    public void enqueueReserved(ByteBuffer message)
+    {
+        outboundLock.lock();
+        try {
+            this.outbound.add(message);
+            this.outboundCount = outbound.size();
+        } finally {
+            outboundLock.unlock();
+        }
+    }
+
+    // For the router's own messages, queued right where they are built.
+    public void enqueue(ByteBuffer message)
+    {
+        reserve(message.remaining());
+        enqueueReserved(message);
+    }
+
+    // Bytes handed over and not written yet, queued or not.
+    public long getOutboundBytes()
+    {
+        return this.outboundBytes.get();
+    }
+
+    public boolean isReadPaused() {
+        return readPaused.get();
+    }
+
+    // Both return false if the client already was in that state.
+    public boolean pauseRead()
+    {
+        return readPaused.compareAndSet(false, true);
+    }
+
+    public boolean resumeRead()
+    {
+        return readPaused.compareAndSet(true, false);
+    }
+
+    public boolean hasPendingWrites()
+    {
+        return this.outboundCount > 0;
+    }
+
+    // Writes the queued messages with one gathering write, buffers fully written are given to onWritten.
+    // Whatever the socket did not accept stays queued for the next call.
+    public void flush(Consumer<ByteBuffer> onWritten) throws IOException
+    {
+        outboundLock.lock();
+        try {
+            if (outbound.isEmpty())
+                return ;
+            if (gatherBuffers.length < outbound.size())
+                gatherBuffers = new ByteBuffer[outbound.size() * 2];
+            int count = 0;
+            for (ByteBuffer buffer : outbound)
+                gatherBuffers[count++] = buffer;
+            outboundBytes.addAndGet(-socket.write(gatherBuffers, 0, count));
+            while (!outbound.isEmpty() && !outbound.peek().hasRemaining())
+                onWritten.accept(outbound.poll());
+            outboundCount = outbound.size();
+            for (int i = 0; i < count; i++)
+                gatherBuffers[i] = null;
+        } finally {
+            outboundLock.unlock();
+        }
+    }
+
+    // Gives back every buffer the client holds, used once the client is gone.
+    public void releaseBuffers(Consumer<ByteBuffer> release)
+    {
+        outboundLock.lock();
+        try {
+            if (inbound != null)
+                release.accept(inbound);
+            inbound = null;
+            while (!outbound.isEmpty())
+            {
+                ByteBuffer message = outbound.poll();
+                outboundBytes.addAndGet(-message.remaining());
+                release.accept(message);
+            }
+            outboundCount = 0;
+            start = 0;
+            parsed = 0;
+        } finally {
+            outboundLock.unlock();
+        }
+    }
+
+    // Reads whatever the socket has straight into the inbound buffer, then parses the new bytes in place.
+    // A full buffer first drops the messages already handled, if the message still outgrows it it is moved
+    // to a bigger one and the old one is given to release.
+    public int readFrom(SocketChannel channel, Consumer<ByteBuffer> release) throws IOException
+    {
+        if (!inbound.hasRemaining() && start > 0)
+        {
+            inbound.flip().position(start);
+            inbound.compact();
+            parsed -= start;
+            start = 0;
+        }
+        if (!inbound.hasRemaining())
+        {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(inbound.capacity() * 2);
+            inbound.flip();
+            bigger.put(inbound);
+            release.accept(inbound);
+            inbound = bigger;
+        }
+
+        int bytesRead = channel.read(inbound);
+        if (bytesRead <= 0)
+            return bytesRead;
+
+        this.lastReceived = System.nanoTime();
+        parseInbound();
+        return bytesRead;
+    }
+
+    // Parses the next message once all of it has been read, BodyLength tells where it ends.
+    // Until then the bytes are left alone, a message cut short by a read is not parsed twice.
+    private void parseInbound()
     {
-        if (size <= 0)
-            return ;
         this.state = Client.RUNNING;
+        int end = inbound.position();
+        int length;
         try {
-            Byte[] bytes = new Byte[size];
+            length = FixFramer.messageLength(inbound, parsed, end);
+        } catch (Exception e)
+        {
+            // The stream cannot be split into messages anymore, the client gets a session reject.
+            Logger.logError("Framing failed: " + e.getMessage());
+            this.valid = false;
+            this.state = Client.INVALID;
+            return ;
+        }
+        if (length < 0)
+            return ;
 
-            int i = 0;
-            for (; i < size; i++)
-                bytes[i] = data[i];
-            parser.consume(bytes);
+        try {
+            inbound.limit(parsed + length).position(parsed);
+            parser.consume(inbound);
             if (this.name == null && parser.getSenderCompID() != null)
                 this.name = parser.getSenderCompID();
             if (this.parser.isComplete())
@@ -177,9 +471,22 @@ public abstract class Client implements Comparable<Client> {
         } catch (Exception e)
         {
             Logger.logError("EngineFix failed: " + e.getMessage());
+        } finally {
+            parsed = inbound.position();
+            inbound.limit(inbound.capacity()).position(end);
         }
     }
 
+    // Parses the bytes that followed the last message in the same read, once the parser was reset.
+    // Returns false if there are none, the socket has to be read for the next message.
+    public boolean parseBuffered()
+    {
+        if (inbound == null || inbound.position() == parsed)
+            return false;
+        parseInbound();
+        return true;
+    }
+
     public boolean messageComplete()
     {
         return this.parser.isComplete();
@@ -192,16 +499,29 @@ public abstract class Client implements Comparable<Client> {
     public void resetClient()
     {
         this.state = Client.NEW;
-        this.parser = new EngineFIX();;
+        this.parser.reset();
+        if (this.inbound != null)
+            this.inbound.clear();
+        this.start = 0;
+        this.parsed = 0;
         this.valid = true;
         this.targetFound = true;
         this.idSent = false;
         this.socketValid = true;
     }
 
+    // Drops the message that was just handled, the bytes read after it are kept for the next one.
     public void resetParser()
     {
-        this.parser = new EngineFIX();
+        this.parser.reset();
+        this.start = parsed;
+        // Nothing was read past the message, the next read starts at the beginning of the buffer.
+        if (this.inbound != null && this.inbound.position() == parsed)
+        {
+            this.inbound.clear();
+            this.start = 0;
+            this.parsed = 0;
+        }
         this.targetFound = true;
         this.valid = true;
     }
@@ -0,0 +1,115 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Pool of direct buffers used to read and hold client messages.
+// Buffers are cut out of big direct slabs, so the pool only allocates when it runs dry.
+// Past maxSlabs slabs it hands out heap buffers instead, left to the GC once released,
+// so the direct memory of the pool stays bounded whatever the load.
+// A buffer is owned by one connection at a time: the client reading into it, then
+// the destination it is forwarded to, which gives it back once it has been written.
+public class BufferPool {
+    private final int bufferSize;
+    private final int buffersPerSlab;
+    private final int maxPooled;
+    private final int maxSlabs;
+    private final AtomicInteger slabs;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers;
+    private final AtomicInteger pooled;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicInteger inUse;
+
+    public BufferPool(int bufferSize, int buffersPerSlab, int maxPooled, int maxSlabs)
+    {
+        this.bufferSize = bufferSize;
+        this.buffersPerSlab = buffersPerSlab;
+        this.maxPooled = maxPooled;
+        this.maxSlabs = maxSlabs;
+        this.slabs = new AtomicInteger(0);
+        this.buffers = new ConcurrentLinkedQueue<>();
+        this.pooled = new AtomicInteger(0);
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+        this.inUse = new AtomicInteger(0);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    public int getSlabs() {
+        return slabs.get();
+    }
+
+    // Cuts a new slab in buffers, keeps all of them but one in the pool and returns the last one.
+    private ByteBuffer allocateSlab()
+    {
+        ByteBuffer slab = ByteBuffer.allocateDirect(bufferSize * buffersPerSlab);
+        for (int i = 1; i < buffersPerSlab; i++)
+        {
+            slab.limit((i + 1) * bufferSize).position(i * bufferSize);
+            if (pooled.incrementAndGet() <= maxPooled)
+                buffers.offer(slab.slice());
+            else
+                pooled.decrementAndGet();
+        }
+        slab.limit(bufferSize).position(0);
+        return slab.slice();
+    }
+
+    public ByteBuffer acquire()
+    {
+        ByteBuffer buffer = buffers.poll();
+        inUse.incrementAndGet();
+        if (buffer == null)
+        {
+            misses.incrementAndGet();
+            if (slabs.incrementAndGet() <= maxSlabs)
+                return allocateSlab();
+            slabs.decrementAndGet();
+            inUse.decrementAndGet();
+            return ByteBuffer.allocate(bufferSize);
+        }
+        hits.incrementAndGet();
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer)
+    {
+        // Buffers grown for an oversized message or handed out past the slab limit did not come
+        // from the pool, they are left to the GC.
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize)
+            return ;
+        inUse.decrementAndGet();
+        buffer.clear();
+        if (pooled.incrementAndGet() <= maxPooled)
+            buffers.offer(buffer);
+        else
+            pooled.decrementAndGet();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "buffer pool: " + hits.get() + " hits, " + misses.get() + " misses, " + inUse.get() + " in use, "
+                + slabs.get() + " slabs";
+    }
+}
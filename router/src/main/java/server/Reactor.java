@@ -0,0 +1,113 @@
+package server;
+
+import logger.Logger;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// An I/O thread with its own selector. It owns a shard of the client sockets and
+// handles their events inline, other threads hand it work through execute().
+public class Reactor implements Executor {
+    // Selector of the reactor running on the current thread, if any.
+    private static final ThreadLocal<Selector> eventLoop = new ThreadLocal<>();
+
+    public interface Handler {
+        void handle(Selector selector, SelectionKey key);
+    }
+
+    private final Selector selector;
+    private final Handler handler;
+    private final ConcurrentLinkedQueue<Runnable> tasks;
+    private final Thread thread;
+
+    // Set once the selector has been woken up for the current round, so producers don't wake it up again.
+    private final AtomicBoolean wokenUp;
+
+    public Reactor(String name, Handler handler) throws IOException
+    {
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.wokenUp = new AtomicBoolean(false);
+        this.thread = new Thread(this::run, name);
+    }
+
+    // True if the current thread is the event loop owning this selector, it then doesn't need waking up.
+    public static boolean isEventLoopOf(Selector selector)
+    {
+        return eventLoop.get() == selector;
+    }
+
+    public Selector getSelector() {
+        return selector;
+    }
+
+    public boolean inEventLoop()
+    {
+        return Thread.currentThread() == thread;
+    }
+
+    public void start()
+    {
+        thread.start();
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        tasks.offer(task);
+        if (!inEventLoop() && wokenUp.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    private void runTasks()
+    {
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+        {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                Logger.logError("Task failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void run()
+    {
+        eventLoop.set(selector);
+        try {
+            while (true)
+            {
+                wokenUp.set(false);
+                if (tasks.isEmpty())
+                    selector.select();
+                else
+                    selector.selectNow();
+
+                runTasks();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext())
+                {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid())
+                        continue ;
+                    try {
+                        handler.handle(selector, key);
+                    } catch (RuntimeException ex) {
+                        Logger.logError("Event failed: " + ex.getMessage());
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Logger.logError("Reactor failed: " + ex.getMessage());
+        }
+    }
+}
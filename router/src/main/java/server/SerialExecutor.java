@@ -0,0 +1,58 @@
+package server;
+
+import logger.Logger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Runs its tasks one at a time and in submission order, on top of a shared executor.
+// Every client gets one, so the events of a connection never run concurrently
+// while unrelated connections are processed in parallel.
+public class SerialExecutor implements Executor {
+    // Tasks run before the thread is handed back, so a busy client can't hog a thread.
+    private static final int maxBatch = 64;
+
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Runnable> tasks;
+    private final AtomicBoolean scheduled;
+
+    public SerialExecutor(Executor executor)
+    {
+        this.executor = executor;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean(false);
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        tasks.offer(task);
+        schedule();
+    }
+
+    private void schedule()
+    {
+        if (scheduled.compareAndSet(false, true))
+            executor.execute(this::drain);
+    }
+
+    private void drain()
+    {
+        try {
+            Runnable task;
+            for (int i = 0; i < maxBatch && (task = tasks.poll()) != null; i++)
+            {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    Logger.logError("Task failed: " + ex.getMessage());
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!tasks.isEmpty())
+                schedule();
+        }
+    }
+}
@@ -3,492 +3,851 @@ package server;
 
 import logger.Logger;
 import client.*;
-import engineFIX.EngineFIX;
+import engineFIX.FixEncoder;
+import engineFIX.FixTemplate;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Server {
     private static final int marketPort = 5001;
     private static final int brokerPort = 5000;
+    static final int messageBufferSize = 1024;
+    private static final int buffersPerSlab = 64;
+    private static final int maxPooledBuffers = 4096;
+    private static final int maxSlabs = 256;
+    // Routed messages are copied out of the read buffers into buffers of their own, most fit in a small one.
+    private static final int smallBufferSize = 128;
+    private static final int smallBuffersPerSlab = 512;
+    private static final int maxPooledSmallBuffers = 32768;
+    private static final int maxSmallSlabs = 256;
+    private static final int defaultHeartbeatInterval = 30;
+
+    // Bytes handed over to a client and not written yet above which the client writing to it stops
+    // being read, and below which it is read again.
+    static final int outboundHighWatermark = 256 * 1024;
+    static final int outboundLowWatermark = 64 * 1024;
+    private static final int livenessTickMillis = 100;
+    private static final int livenessWheelSize = 512;
+
+    // Session rejects are all the same, encoded once and copied into a pool buffer for every reject.
+    private static final FixTemplate sessionRejectTemplate = new FixTemplate('3');
+
+    // Registered markets by name, brokers are paired through it.
+    private final ConcurrentHashMap<String, Client> marketsByName;
+
+    // Every connected client by the unique id it was given on accept.
+    private final ConcurrentHashMap<String, Client> sessions;
+
+    // Unique id of a paired client to the client its messages go to.
+    private final ConcurrentHashMap<String, Client> routingTable;
+
+    // Shared by the serial executors of every client, unused in multi-reactor mode.
+    private final ExecutorService service;
 
-    private ArrayList<String> marketNames;
+    // Number of I/O threads in multi-reactor mode, 0 runs a single selector dispatching to the executors.
+    private final int reactorCount;
+    private Reactor[] reactors;
+    private int nextReactor;
 
-    private final HashMap<Integer, Client> marketClients;
-    private final HashMap<Integer, Client> brokerClients;
+    // Every connection gets its own thread doing blocking reads and writes, no selector involved.
+    private final boolean threadPerConnection;
+    // Runs the connections' threads, and the writes the liveness wheel hands off in that mode.
+    private ExecutorService connections;
 
-    private final HashMap<Client, Client> routingTable;
+    // Read buffers, one per client, and the buffers routed messages are copied into.
+    private final BufferPool bufferPool;
+    private final BufferPool smallBufferPool;
 
-    private final ExecutorService service;
+    // Seconds a client can stay quiet before it is sent a test request, and then before it is reaped.
+    private int heartbeatInterval;
+    private final TimingWheel livenessWheel;
+    private final AtomicLong testRequests;
+
+    // Test requests are encoded on the wheel thread, clients' own encoders are used on their executors.
+    private final FixEncoder livenessEncoder;
 
-    private final Object monitor = new Object();
+    // Only taken on logon and disconnect, where market names and pairs change,
+    // events of different clients are otherwise handled in parallel.
+    private final Object pairingLock = new Object();
 
     public Server() {
-        this.service = Executors.newFixedThreadPool(35);
-        this.marketNames = new ArrayList<>();
-        this.marketClients = new HashMap<>();
-        this.brokerClients = new HashMap<>();
-        this.routingTable = new HashMap<>();
+        this(0, false);
+    }
+
+    public Server(int reactorCount) {
+        this(reactorCount, false);
+    }
+
+    public Server(int reactorCount, boolean threadPerConnection) {
+        this.reactorCount = reactorCount;
+        this.threadPerConnection = threadPerConnection;
+        if (reactorCount > 0 || threadPerConnection)
+            this.service = null;
+        else
+            this.service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.marketsByName = new ConcurrentHashMap<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.routingTable = new ConcurrentHashMap<>();
+        this.bufferPool = new BufferPool(messageBufferSize, buffersPerSlab, maxPooledBuffers, maxSlabs);
+        this.smallBufferPool = new BufferPool(smallBufferSize, smallBuffersPerSlab, maxPooledSmallBuffers, maxSmallSlabs);
+        this.heartbeatInterval = defaultHeartbeatInterval;
+        this.livenessWheel = new TimingWheel("liveness", livenessTickMillis, livenessWheelSize);
+        this.testRequests = new AtomicLong(0);
+        this.livenessEncoder = new FixEncoder();
+    }
+
+    public void setHeartbeatInterval(int seconds) {
+        this.heartbeatInterval = seconds;
     }
 
-    private void sendSessionRejectMessage(SocketChannel socketChannel, Client client, Selector selector) throws IOException {
-        String message = EngineFIX.getFixSessionRejectMessage();
-        byte[] bytes = message.getBytes();
-        socketChannel.write(ByteBuffer.wrap(bytes));
+    // Smallest pool buffer that holds length bytes, given back with release once written.
+    // A small one holds the router's own messages but for ids and heartbeats, which say how long they are.
+    private ByteBuffer acquireBuffer(int length) {
+        if (length <= smallBufferPool.getBufferSize())
+            return smallBufferPool.acquire();
+        if (length <= bufferPool.getBufferSize())
+            return bufferPool.acquire();
+        return ByteBuffer.allocateDirect(length);
+    }
+
+    private void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.capacity() == smallBufferPool.getBufferSize())
+            smallBufferPool.release(buffer);
+        else
+            bufferPool.release(buffer);
+    }
+
+    // Writes what the socket takes. Once the client has little left outstanding, the peer paused on it is read again.
+    private void flush(Client client) throws IOException {
+        client.flush(this::release);
+        if (client.getOutboundBytes() < outboundLowWatermark)
+            resumeReading(routingTable.get(client.getUniqueID()));
+    }
+
+    // Rejects and ids go through the outbound queue like any other message, after what is already queued.
+    private void sendSessionRejectMessage(Client client) throws IOException {
+        ByteBuffer message = acquireBuffer(0);
+        sessionRejectTemplate.write(message);
+        client.enqueue(message.flip());
+        flush(client);
         Logger.logError("Sent a session level reject to (" + client.getName() + ").");
         client.resetClient();
-        socketChannel.register(selector, SelectionKey.OP_READ);
-        selector.wakeup();
+        // A client is given a whole interval to log on again, an interactive broker may take a while to retry.
+        client.setLogonDeadline(System.nanoTime() + heartbeatInterval * 1_000_000_000L);
+        registerRead(client);
     }
 
-    private void sendUniqueId(SocketChannel socketChannel, Client client, Selector selector) throws IOException {
-        String message = EngineFIX.constructIdentificationMessage(client.getUniqueID(), "does not matter here", client.getName());
-        socketChannel.write(ByteBuffer.wrap(message.getBytes()));
+    private void sendUniqueId(Client client) throws IOException {
+        ByteBuffer message = acquireBuffer(client.getName().length() + 128);
+        client.getEncoder().begin(message, 'A').field(49, "does not matter here").field(50, client.getUniqueID())
+                .field(56, client.getName()).end();
+        client.enqueue(message.flip());
+        flush(client);
         Logger.logSuccess("Sent unique id (" + client.getUniqueID() + ") to client (" + client.getName() + ").");
         client.setIdSent();
         client.setClientState(Client.ESTABLISHED);
-        if (client.getClientType().equals("market")) {
-            socketChannel.register(selector, SelectionKey.OP_WRITE);
-        } else if (client.getClientType().equals("broker")) {
-            socketChannel.register(selector, SelectionKey.OP_READ);
+        registerRead(client);
+    }
+
+    // A selector only needs waking up when its interest sets are changed from another thread.
+    private static void wakeup(Selector selector) {
+        if (!Reactor.isEventLoopOf(selector))
+            selector.wakeup();
+    }
+
+    // Runs the task right away when already on the client's reactor thread, else queues it on the client's executor.
+    private static void dispatch(Client client, Runnable task) {
+        Executor executor = client.getExecutor();
+        if (executor instanceof Reactor && ((Reactor) executor).inEventLoop())
+            task.run();
+        else
+            executor.execute(task);
+    }
+
+    // Read interest, plus write interest while the client still has queued bytes.
+    // A thread per connection is already back to reading, its blocking writes only need flushing.
+    private void registerRead(Client client) throws IOException {
+        if (threadPerConnection)
+        {
+            flush(client);
+            return ;
+        }
+        int interestOps = client.isReadPaused() ? 0 : SelectionKey.OP_READ;
+        if (client.hasPendingWrites())
+            interestOps |= SelectionKey.OP_WRITE;
+        client.getKey().interestOps(interestOps);
+        wakeup(client.getSelector());
+    }
+
+    // Has the write handler run for the client, on its next write event or, with a thread
+    // per connection, right after the read handler is done.
+    private void requestWrite(Client client) {
+        if (threadPerConnection)
+        {
+            client.setWriteRequested(true);
+            return ;
+        }
+        client.getKey().interestOps(SelectionKey.OP_WRITE);
+        wakeup(client.getSelector());
+    }
+
+    // Stops watching the client's socket and closes it, closing it wakes up the thread blocked reading it.
+    private void cancel(Client client) {
+        SelectionKey key = client.getKey();
+        if (key != null)
+            key.cancel();
+        try {
+            client.getSocket().close();
+        } catch (IOException ex) {
+            Logger.logError("Closing (" + client.getName() + ") failed: " + ex.getMessage());
         }
-        selector.wakeup();
     }
 
-    private void forwardMessage(SocketChannel destinationSocket, Client destination, Client source, Selector selector) throws IOException {
-        byte[] bytes;
-        String targetName;
+    // For a client that left or failed: its session, routing entry and buffers are released, the peer
+    // paused on it is read again, and its socket is closed.
+    private void disconnect(Client client) {
+        purgeClient(client);
+        cancel(client);
+    }
+
+    // Runs on the source's executor, the write itself happens on the destination's executor.
+    private void forwardMessage(Client destination, Client source) {
+        String targetName = source.getName();
 
-        targetName = source.getName();
-        bytes = EngineFIX.toPrimitiveArray(source.parser.getRawData());
+        // The message is copied out of the source's read buffer into a pool buffer sized to it,
+        // the source carries on with the bytes read after it.
+        ByteBuffer message = source.copyInboundMessage(acquireBuffer(source.getInboundMessageLength()));
         source.resetParser();
         source.setClientState(Client.ESTABLISHED);
 
-        destinationSocket.write(ByteBuffer.wrap(bytes));
-        Logger.logSuccess("Wrote data to (" + destination.getName() + ") from (" + targetName + ").");
-        destinationSocket.register(selector, SelectionKey.OP_READ);
-        selector.wakeup();
+        // The source is paused before it is read again, whatever the destination's executor has yet to run.
+        if (deliver(destination, message, targetName) > outboundHighWatermark)
+            pauseReading(source);
+    }
+
+    // Counts the message against the destination on the calling thread and returns all the destination has
+    // outstanding, the message is queued and written on the destination's executor.
+    private long deliver(Client destination, ByteBuffer message, String from) {
+        int length = message.remaining();
+        long outstanding = destination.reserve(length);
+        dispatch(destination, () -> {
+            if (!destination.isSocketValid())
+            {
+                destination.unreserve(length);
+                release(message);
+                return ;
+            }
+            try {
+                destination.enqueueReserved(message);
+                flush(destination);
+                Logger.logSuccess("Wrote data to (" + destination.getName() + ") from (" + from + ").");
+                if (destination.hasPendingWrites())
+                    registerRead(destination);
+            } catch (IOException ex) {
+                Logger.logError("Writing data to (" + destination.getName() + ") failed: " + ex.getMessage());
+                disconnect(destination);
+            }
+        });
+        return outstanding;
+    }
+
+    // The peer is not read until the client it writes to drained what it has outstanding. The flag is
+    // flipped right away, so the peer is paused once, and its interest ops are rebuilt on its executor.
+    // With blocking sockets the forwarding thread blocks instead.
+    private void pauseReading(Client peer) {
+        if (peer == null || threadPerConnection || !peer.pauseRead())
+            return ;
+        Logger.logWarning("Client (" + peer.getName() + ") is writing faster than its target reads, pausing it.");
+        dispatch(peer, () -> rebuildInterestOps(peer));
+    }
+
+    private void resumeReading(Client peer) {
+        if (peer == null || !peer.resumeRead())
+            return ;
+        Logger.logInfo("Client (" + peer.getName() + ") is read again.");
+        dispatch(peer, () -> rebuildInterestOps(peer));
+    }
+
+    // Interest ops are rebuilt as a whole on the client's executor from the client's state, the selector thread
+    // only clears them before it dispatches a task that rebuilds them, so no pause or resume is lost.
+    private void rebuildInterestOps(Client client) {
+        SelectionKey key = client.getKey();
+        if (key == null || !key.isValid())
+            return ;
+        try {
+            registerRead(client);
+        } catch (IOException ex) {
+            Logger.logError("Writing to (" + client.getName() + ") failed: " + ex.getMessage());
+            disconnect(client);
+        }
+    }
+
+    // Runs on the liveness wheel, about once per heartbeat interval and client. A client that sent nothing
+    // for a whole interval is sent a test request, if nothing was read from it an interval later it is reaped.
+    private void checkLiveness(Client client) {
+        if (!client.isSocketValid())
+            return ;
+
+        long now = System.nanoTime();
+        long intervalMillis = heartbeatInterval * 1000L;
+        long testRequestSentAt = client.getTestRequestSentAt();
+
+        if (testRequestSentAt != 0 && client.getLastReceived() - testRequestSentAt < 0)
+        {
+            Logger.logWarning("Client (" + client.getName() + ") with Id (" + client.getUniqueID() + ") did not answer a test request, disconnecting it.");
+            dispatch(client, () -> disconnect(client));
+            return ;
+        }
+        client.setTestRequestSentAt(0);
+
+        // A paused client is checked like any other: if the client it writes to does not drain its queue
+        // for two intervals, its test request is not read and it is reaped, which it would never be otherwise.
+        long idleMillis = (now - client.getLastReceived()) / 1_000_000;
+        // A client has an interval to log on after accept or a session reject, if it did not by then it never will.
+        if (!client.isIdSent())
+        {
+            long untilDeadlineMillis = (client.getLogonDeadline() - now) / 1_000_000;
+            if (untilDeadlineMillis > 0)
+                livenessWheel.schedule(() -> checkLiveness(client), untilDeadlineMillis);
+            else
+            {
+                Logger.logWarning("Client (" + client.getName() + ") with Id (" + client.getUniqueID() + ") did not log on in time, disconnecting it.");
+                dispatch(client, () -> disconnect(client));
+            }
+        }
+        else if (idleMillis < intervalMillis)
+            livenessWheel.schedule(() -> checkLiveness(client), intervalMillis - idleMillis);
+        else
+        {
+            client.setTestRequestSentAt(now);
+            ByteBuffer message = acquireBuffer(0);
+            livenessEncoder.begin(message, '1').field(50, client.getUniqueID()).field(112, testRequests.incrementAndGet()).end();
+            message.flip();
+            // With a thread per connection the client's executor runs the write right here, a blocking
+            // write to a client that stopped reading would hold up the wheel: it goes on a thread of its own.
+            if (threadPerConnection)
+                connections.execute(() -> deliver(client, message, "router"));
+            else
+                deliver(client, message, "router");
+            livenessWheel.schedule(() -> checkLiveness(client), intervalMillis);
+        }
+    }
+
+    // Sends a complete message from an established client to the client it is paired with.
+    private void routeMessage(Client client) throws IOException {
+        Client destination = routingTable.get(client.getUniqueID());
+
+        if (destination == null)
+        {
+            Logger.logWarning("Client (" + client.getName() + ") is not paired, dropping its message.");
+            client.resetParser();
+            client.setClientState(Client.ESTABLISHED);
+        }
+        else if (!destination.isSocketValid())
+        {
+            // The client will get a session reject, its target is gone.
+            client.setValid(false);
+            requestWrite(client);
+            return ;
+        }
+        else
+        {
+            forwardMessage(destination, client);
+        }
+        registerRead(client);
     }
 
-    private void pairClient(SocketChannel socketChannel, Client client, Selector selector) throws IOException {
+    private void pairClient(Client client) throws IOException {
         String targetClientName = client.getTargetMarket();
-        ArrayList<Client> clientsFound = findTargetMarket(targetClientName);
+        Client targetClient = findTargetMarket(targetClientName);
 
-        if (clientsFound == null) {
+        if (targetClient == null) {
             Logger.logError("Target client (" + targetClientName + ") not found");
             client.clearMarketFound();
             client.setClientState(Client.INVALID);
-            socketChannel.register(selector, SelectionKey.OP_WRITE);
-            selector.wakeup();
+            requestWrite(client);
             return;
         }
 
-        Client targetClient = clientsFound.get(0);
-        Client temp = routingTable.get(targetClient);
+        Client temp = routingTable.get(targetClient.getUniqueID());
 
         // Client you're trying to connect to is already paired.
         if (temp != null) {
             // if the target Market is already paired with another broker
             // check if the broker is still open, if not allow this broker
             // to be paired with it, else mark message as invalid.
-            if (isSocketValid(temp)) {
+            if (temp.isSocketValid()) {
                 client.setValid(false);
                 Logger.logError("Market (" + targetClientName + ") is already connected to a broker");
-                socketChannel.register(selector, SelectionKey.OP_WRITE);
-                selector.wakeup();
+                requestWrite(client);
                 return ;
             } else {
                 Logger.logWarning("Market (" + targetClientName + ") is connected to a closed broker, cleaning old broker...");
-                brokerClients.remove(temp.getRemoteAddress().getPort());
-                routingTable.remove(targetClient);
-                routingTable.remove(temp);
+                sessions.remove(temp.getUniqueID(), temp);
+                routingTable.remove(targetClient.getUniqueID());
+                routingTable.remove(temp.getUniqueID());
             }
         }
 
         // Let's pair the two clients in the routing table, so we can know where to forward the response from market.
         Logger.logSuccess("Paired client (" + client.getName() + ") with target (" + targetClient.getName() + ").");
-        routingTable.put(client, targetClient);
-        routingTable.put(targetClient, client);
+        routingTable.put(client.getUniqueID(), targetClient);
+        routingTable.put(targetClient.getUniqueID(), client);
         client.resetParser();
         client.setClientState(Client.COMPLETED);
     }
 
+    private void purgeClient(Client client)
+    {
+        synchronized (pairingLock)
+        {
+            if (client.getClientType().equals("market"))
+                purgeMarket(client);
+            else if (client.getClientType().equals("broker"))
+                purgeBroker(client);
+        }
+    }
+
     private void purgeMarket(Client market)
     {
         String marketName = market.getName();
         String uniqueId = market.getUniqueID();
-        try {
-            SocketChannel socketChannel = market.getSocket();
-            InetSocketAddress remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
-            this.marketClients.remove(remoteAddress.getPort());
-            this.routingTable.remove(market);
-            Logger.logWarning("Purged market (" + marketName + ") with id (" + uniqueId + ").");
-        } catch (IOException ex) {
-            Logger.logError("Failed to purge market (" + marketName + ") :" + ex.getMessage());
-        }
+        this.sessions.remove(uniqueId, market);
+        if (marketName != null)
+            this.marketsByName.remove(marketName, market);
+        // Its broker may be paused waiting on it.
+        resumeReading(this.routingTable.remove(uniqueId));
+        market.setSocketValid(false);
+        market.releaseBuffers(this::release);
+        Logger.logWarning("Purged market (" + marketName + ") with id (" + uniqueId + ").");
     }
 
     private void purgeBroker(Client broker)
     {
         String brokerName = broker.getName();
         String uniqueId = broker.getUniqueID();
-        try {
-            SocketChannel socketChannel = broker.getSocket();
-            InetSocketAddress remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
-            this.brokerClients.remove(remoteAddress.getPort());
-            this.routingTable.remove(broker);
-            Logger.logWarning("Purged broker (" + brokerName + ") with Id (" + uniqueId + ").");
-        } catch (IOException ex) {
-            Logger.logError("Failed to purge broker (" + brokerName + ") :" + ex.getMessage());
-        }
+        this.sessions.remove(uniqueId, broker);
+        resumeReading(this.routingTable.remove(uniqueId));
+        broker.setSocketValid(false);
+        broker.releaseBuffers(this::release);
+        Logger.logWarning("Purged broker (" + brokerName + ") with Id (" + uniqueId + ").");
     }
 
     private void registerMarket(Client client) throws DuplicateMarketNameException
     {
         String marketName = client.getName();
-        if (!isMarketNameAlreadyUsed(marketName))
-        {
-            this.marketNames.add(client.getName());
-            client.resetParser();
-            client.setClientState(Client.COMPLETED);
-        } else {
-            ArrayList<Client> marketsFound = findTargetMarket(marketName);
-
-            marketsFound.removeIf((clientArg) -> clientArg.getUniqueID().equals(client.getUniqueID()));
+        Client market = marketsByName.putIfAbsent(marketName, client);
 
-            Client market = marketsFound.get(0);
-
-            if (isSocketValid(market))
+        // Name is taken by a market that may be gone, its socket tells.
+        if (market != null && market != client)
+        {
+            if (market.isSocketValid())
                 throw new DuplicateMarketNameException(marketName);
-            else {
-                purgeMarket(market);
-                Logger.logWarning("Purged market (" + market.getName() + ") with Id (" + market.getUniqueID() + ").");
-                client.resetParser();
-                client.setClientState(Client.COMPLETED);
-            }
+            purgeMarket(market);
+            marketsByName.put(marketName, client);
         }
+        client.resetParser();
+        client.setClientState(Client.COMPLETED);
     }
 
-    private ArrayList<Client> findTargetMarket(String marketName)
+    private Client findTargetMarket(String marketName)
     {
         if (marketName == null)
             return null;
-        ArrayList<Client> clients = new ArrayList<>();
+        return marketsByName.get(marketName);
+    }
 
-        synchronized (marketClients)
-        {
-            for (Client client : this.marketClients.values()) {
-                String name = client.getName();
-                if (name != null && name.compareTo(marketName) == 0)
-                {
-                    clients.add(client);
-                }
-            }
-        }
-        return (clients.size() > 0) ? clients : null;
+    private Client newClient(SocketChannel socketChannel) throws IOException {
+        // Messages are small and written as soon as they are routed, Nagle would hold each one until the
+        // previous one is acknowledged, which the peer delays until it has something to send itself.
+        socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        InetSocketAddress localAddress = (InetSocketAddress) socketChannel.getLocalAddress();
+
+        Client client;
+        String uniqueID = Client.generateRandomString(6);
+        while (sessions.containsKey(uniqueID))
+            uniqueID = Client.generateRandomString(6);
+        if (localAddress.getPort() == brokerPort)
+            client = new BrokerClient(uniqueID, localAddress, socketChannel);
+        else
+            client = new MarketClient(uniqueID, localAddress, socketChannel);
+        client.setInboundBuffer(bufferPool.acquire());
+        return client;
     }
 
-    private boolean isSocketValid(Client client)
-    {
-        SocketChannel socket = client.getSocket();
-        ByteBuffer buf = ByteBuffer.allocate(1);
+    // The session of a connected client, null once it is gone.
+    Client getSession(String uniqueID) {
+        return sessions.get(uniqueID);
+    }
+
+    private void watch(Client client) {
+        client.setLogonDeadline(System.nanoTime() + heartbeatInterval * 1_000_000_000L);
+        livenessWheel.schedule(() -> checkLiveness(client), heartbeatInterval * 1000L);
+    }
+
+    private void addClient(Client client) {
+        sessions.put(client.getUniqueID(), client);
+        Logger.logSuccess("Registered " + client.getClientType() + " with Id: " + client.getUniqueID());
+    }
+
+    // Accepting is cheap, it runs on the selector thread.
+    private void accept(Selector selector, SelectionKey key) {
         try {
-            if (socket.read(buf) < 0)
+            ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
+            SocketChannel socketChannel = serverSocketChannel.accept();
+            if (socketChannel == null)
+                return ;
+
+            socketChannel.configureBlocking(false);
+            Client client = newClient(socketChannel);
+
+            // The socket belongs to one reactor from now on, round robin.
+            Reactor reactor = null;
+            if (reactors != null)
             {
-                Logger.logWarning("Client (" + client.getName() + ") with Id (" + client.getUniqueID() + ") have an invalid socket.");
-                return false;
+                reactor = reactors[nextReactor];
+                nextReactor = (nextReactor + 1) % reactors.length;
+                client.setExecutor(reactor);
+                client.setSelector(reactor.getSelector());
             }
-            return true;
+            else
+            {
+                client.setExecutor(new SerialExecutor(service));
+                client.setSelector(selector);
+            }
+
+            addClient(client);
+            watch(client);
+
+            if (reactor != null)
+            {
+                // Registered by the reactor thread itself, so its selector is never blocked on.
+                Selector reactorSelector = reactor.getSelector();
+                reactor.execute(() -> {
+                    try {
+                        client.setKey(socketChannel.register(reactorSelector, SelectionKey.OP_READ, client));
+                    } catch (IOException ex) {
+                        Logger.logError("Accept: " + ex.getMessage());
+                    }
+                });
+            }
+            else
+                client.setKey(socketChannel.register(selector, SelectionKey.OP_READ, client));
         } catch (IOException e) {
-            return false;
+            System.out.println("Accept: " + e.getMessage());
+            System.exit(1);
         }
     }
 
-    private boolean isMarketNameAlreadyUsed(String marketName)
-    {
-        return (this.marketNames.contains(marketName));
-    }
+    // What to do with the bytes the client just read, the same whether they came from a selector event or a blocking read.
+    private void handleRead(Client client, int bytesRead) throws IOException {
+        if (bytesRead < 0) {
+            disconnect(client);
+            Logger.logInfo(bufferPool + ", small " + smallBufferPool);
+            return ;
+        }
 
-    private void accept(Selector selector, SelectionKey key) {
-        service.submit(() -> {
-            synchronized (monitor)
-            {
-                try {
-                    ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
-                    SocketChannel socketChannel = serverSocketChannel.accept();
-                    if (socketChannel == null)
-                        return ;
+        Logger.logInfo("Client (" + client.getName() + ") is done reading.");
+        handleMessage(client);
+
+        // A read may hold several messages, a broker does not wait for an answer before sending its next order.
+        // The ones after the first are handled before the socket is read again.
+        while (client.getClientState() == Client.ESTABLISHED && client.parseBuffered())
+            handleMessage(client);
+    }
 
-                    socketChannel.configureBlocking(false);
+    private void handleMessage(Client client) throws IOException {
+        // Client is invalid due to some error in the request.
+        if (!client.parser.isValid() || !client.isValid())
+        {
+            Logger.logError("Client message is broken");
+            client.setValid(false);
+            requestWrite(client);
+        }
+        // Client message is complete without errors.
+        else if (client.messageComplete())
+        {
+            Logger.logInfo("Client completed reading message");
 
-                    InetSocketAddress localAddress = (InetSocketAddress) socketChannel.getLocalAddress();
-                    InetSocketAddress remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
+            // unique id sent need to be the same on as assigned at first.
+            if (client.isIdSent() && !client.parser.getView().valueEquals(50, client.getUniqueID()))
+            {
+                Logger.logError("Unique id: (" + client.parser.getSenderSubID() + ") doesn't match id assigned: (" + client.getUniqueID() + ").");
+                client.setValid(false);
+            }
+            else if (client.parser.isLogon())
+            {
+                Logger.logInfo("Received identification message");
 
-                    if (localAddress.getPort() == brokerPort)
-                    {
-                        String uniqueID = Client.generateRandomString(6);
-                        synchronized (brokerClients)
+                // Client need to provide a name.
+                if (client.getName() == null)
+                {
+                    Logger.logError("Client didn't provide a name");
+                    client.setValid(false);
+                }
+                // If client is a market we need to check if the name is unique,
+                // since we use the market name to pair it with a broker.
+                else if (client.getClientType().equals("market"))
+                {
+                    try {
+                        synchronized (pairingLock)
                         {
-                            brokerClients.put(remoteAddress.getPort(), new BrokerClient(uniqueID, localAddress, socketChannel));
+                            registerMarket(client);
                         }
-                        Logger.logSuccess("Registered broker with Id: " + uniqueID);
+                    } catch (DuplicateMarketNameException ex)
+                    {
+                        Logger.logError(ex.getMessage());
+                        client.setValid(false);
                     }
-                    if (localAddress.getPort() == marketPort)
+                } else if (client.getClientType().equals("broker"))
+                {
+                    synchronized (pairingLock)
                     {
-                        String uniqueID = Client.generateRandomString(6);
-                        synchronized (marketClients)
-                        {
-                            marketClients.put(remoteAddress.getPort(), new MarketClient(uniqueID, localAddress, socketChannel));
-                        }
-                        Logger.logSuccess("Registered market with Id: " + uniqueID);
+                        pairClient(client);
                     }
-                    socketChannel.register(selector, SelectionKey.OP_READ);
-                    selector.wakeup();
-                } catch (IOException e) {
-                    System.out.println("Accept: " + e.getMessage());
-                    System.exit(1);
                 }
             }
-        });
-    }
-
-    private void read(Selector selector, SelectionKey key) {
-        SocketChannel socketChannel = (SocketChannel)key.channel();
-
-        if (socketChannel == null)
-            return ;
-
-        InetSocketAddress localAddress = null;
-        InetSocketAddress remoteAddress = null;
-        ByteBuffer buffer = ByteBuffer.allocate(1024);
-        int bytesRead;
-
-        try {
-            localAddress = (InetSocketAddress) socketChannel.getLocalAddress();
-            remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
-        } catch (IOException exception) {
-            Logger.logError(exception.getMessage());
-            System.exit(1);
+            // Heartbeats and test requests are between the client and the router, they are never routed.
+            else if (client.isIdSent() && (client.parser.isHeartbeat() || client.parser.isTestRequest()))
+            {
+                if (client.parser.isTestRequest())
+                {
+                    ByteBuffer heartbeat = acquireBuffer(client.parser.getView().getLength(112) + 128);
+                    client.getEncoder().begin(heartbeat, '0').field(50, client.getUniqueID())
+                            .field(112, client.parser.getView(), 112).end();
+                    client.enqueue(heartbeat.flip());
+                }
+                client.resetParser();
+                client.setClientState(Client.ESTABLISHED);
+                registerRead(client);
+                return ;
+            }
+            // Any other message from an established client goes straight to the client it is paired with.
+            else if (client.isIdSent())
+            {
+                routeMessage(client);
+                return ;
+            }
+            requestWrite(client);
         }
+        // Message is not complete yet, wait for more bytes.
+        else
+        {
+            registerRead(client);
+        }
+    }
 
-        Client client = null;
-
-        if (localAddress.getPort() == brokerPort)
+    private void handleWrite(Client client) {
+        // Finish writing what is already queued before anything else is sent.
+        if (client.hasPendingWrites())
         {
-            synchronized (brokerClients)
+            try {
+                flush(client);
+            } catch (IOException ex) {
+                Logger.logError("Writing to (" + client.getName() + ") failed: " + ex.getMessage());
+                disconnect(client);
+                return ;
+            }
+            if (client.hasPendingWrites())
             {
-                client = brokerClients.get(remoteAddress.getPort());
+                try {
+                    registerRead(client);
+                } catch (IOException ex) {
+                    Logger.logError("Write: " + ex.getMessage());
+                }
+                return ;
             }
         }
 
-        if (localAddress.getPort() == marketPort)
+        // Nothing to answer before the client's message is complete, the ops are rebuilt all the same
+        // since the write event that got here does not say what else the client was waiting for.
+        if (client.getClientState() < Client.ESTABLISHED)
         {
-            synchronized (marketClients)
-            {
-                client = marketClients.get(remoteAddress.getPort());
+            try {
+                registerRead(client);
+            } catch (IOException ex) {
+                Logger.logError("Write: " + ex.getMessage());
+                disconnect(client);
             }
+            return ;
         }
 
-
-        try {
-            bytesRead = socketChannel.read(buffer);
-            synchronized (monitor)
-            {
-                if (bytesRead < 0) {
-                    if (client.getClientType().equals("market"))
-                        purgeMarket(client);
-                    else if (client.getClientType().equals("broker"))
-                        purgeBroker(client);
-                    key.cancel();
-                    return ;
-                }
-                if (bytesRead == 0)
-                    return ;
+        if (!client.isTargetFound() || !client.parser.isValid() || !client.isValid())
+        {
+            try {
+                sendSessionRejectMessage(client);
+            } catch (IOException ex) {
+                Logger.logError("Sending session reject message to (" + client.getName() + ") failed: " + ex.getMessage());
+                disconnect(client);
             }
-        } catch (IOException exception) {
-            Logger.logError("Read: " + exception.getMessage());
-            synchronized (monitor)
-            {
-                client.setSocketValid(false);
+            return ;
+        }
+
+        if (!client.isIdSent())
+        {
+            try {
+                sendUniqueId(client);
+            } catch (IOException ex) {
+                Logger.logError("Sending unique id to (" + client.getName() + ") failed: " + ex.getMessage());
+                disconnect(client);
             }
-            key.cancel();
             return ;
         }
 
-        Client finalClient = client;
+        // Nothing else to write, go back to reading.
+        try {
+            registerRead(client);
+        } catch (IOException ex) {
+            Logger.logError("Write: " + ex.getMessage());
+            disconnect(client);
+        }
+    }
 
-        int finalBytesRead = bytesRead;
+    private void read(Selector selector, SelectionKey key) {
+        SocketChannel socketChannel = (SocketChannel)key.channel();
 
-        service.submit(() -> {
-                synchronized (monitor)
-                {
-                    try {
-                        if (finalClient.getClientState() >= Client.INVALID)
-                            return ;
+        // Every client socket is registered with its client attached.
+        Client client = (Client) key.attachment();
 
-                        Logger.logInfo("Client (" + finalClient.getName() + ") is reading...");
+        // The task reads the socket itself, straight into the buffer owned by the client,
+        // so the channel is not selected again until the task is done with it.
+        key.interestOps(0);
 
-                        finalClient.read(buffer.array(), finalBytesRead);
+        dispatch(client, () -> {
+            try {
+                // Client is waiting for the router to write to it, do not read yet.
+                if (client.getClientState() >= Client.INVALID)
+                {
+                    requestWrite(client);
+                    return ;
+                }
 
-                        Logger.logInfo("Client (" + finalClient.getName() + ") is done reading.");
+                Logger.logInfo("Client (" + client.getName() + ") is reading...");
 
-                        // Client is invalid due to some error in the request.
-                        if (!finalClient.parser.isValid())
-                        {
-                            Logger.logError("Client message is broken");
-                            finalClient.setValid(false);
-                            socketChannel.register(selector, SelectionKey.OP_WRITE);
-                            selector.wakeup();
-                        }
-                        // Client message is complete without errors.
-                        else if (finalClient.messageComplete())
-                        {
-                            Logger.logInfo("Client completed reading message");
-
-                            // unique id sent need to be the same on as assigned at first.
-                            if (finalClient.isIdSent() && !finalClient.getUniqueID().equals(finalClient.parser.getSenderSubID()))
-                            {
-                                Logger.logError("Unique id: (" + finalClient.parser.getSenderSubID() + ") doesn't match id assigned: (" + finalClient.getUniqueID() + ").");
-                                finalClient.setValid(false);
-                            }
-                            else if (finalClient.parser.getMsgType().compareTo("A") == 0)
-                            {
-                                Logger.logInfo("Received identification message");
-
-                                // Client need to provide a name.
-                                if (finalClient.getName() == null)
-                                {
-                                    Logger.logError("Client didn't provide a name");
-                                    finalClient.setValid(false);
-                                }
-                                // If client is a market we need to check if the name is unique,
-                                // since we use the market name to pair it with a broker.
-                                else if (finalClient.getClientType().equals("market"))
-                                {
-                                    try {
-                                        registerMarket(finalClient);
-                                    } catch (DuplicateMarketNameException ex)
-                                    {
-                                        Logger.logError(ex.getMessage());
-                                        finalClient.setValid(false);
-                                    }
-                                } else if (finalClient.getClientType().equals("broker"))
-                                {
-                                    pairClient(socketChannel, finalClient, selector);
-                                }
-                            }
-                            socketChannel.register(selector, SelectionKey.OP_WRITE);
-                            selector.wakeup();
-                        }
-                    } catch (IOException e) {
-                        Logger.logError("Read task failed: " + e.getMessage());
-                        finalClient.setSocketValid(false);
-                        key.cancel();
-                    }
-                }
+                int bytesRead = client.readFrom(socketChannel, this::release);
+                handleRead(client, bytesRead);
+            } catch (IOException e) {
+                Logger.logError("Read task failed: " + e.getMessage());
+                disconnect(client);
+            }
         });
     }
 
     private void write(Selector selector, SelectionKey key) {
-        SocketChannel socketChannel = (SocketChannel) key.channel();
-
-        if (socketChannel == null)
-            return;
+        Client client = (Client) key.attachment();
 
-        InetSocketAddress localAddress = null;
-        InetSocketAddress remoteAddress = null;
+        // Not selected again until the task is done, it sets the whole interest set back whatever it does,
+        // after anything another thread set meanwhile.
+        key.interestOps(0);
 
-        try {
-            localAddress = (InetSocketAddress) socketChannel.getLocalAddress();
-            remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
-        } catch (IOException exception) {
-            Logger.logError("Write: " + exception.getMessage());
-            System.exit(1);
-        }
+        dispatch(client, () -> handleWrite(client));
+    }
 
-        Client client = null;
+    // Handles a read or write event of a client socket.
+    private void handle(Selector selector, SelectionKey key) {
+        if (key.isReadable())
+            read(selector, key);
+        else if (key.isWritable())
+            write(selector, key);
+    }
 
-        if (localAddress.getPort() == brokerPort) {
-            synchronized (brokerClients) {
-                client = brokerClients.get(remoteAddress.getPort());
+    // Thread per connection mode: the connection's own thread blocks reading its socket and handles
+    // what it read, other connections only touch it to queue and flush messages for it.
+    private void serve(Client client) {
+        SocketChannel socketChannel = client.getSocket();
+        try {
+            while (client.isSocketValid())
+            {
+                int bytesRead = client.readFrom(socketChannel, this::release);
+                handleRead(client, bytesRead);
+                if (client.takeWriteRequest())
+                    handleWrite(client);
             }
-        }
-        if (localAddress.getPort() == marketPort) {
-            synchronized (marketClients) {
-                client = marketClients.get(remoteAddress.getPort());
+        } catch (IOException e) {
+            // A client reaped for not answering is already purged, its socket was closed on purpose.
+            if (client.isSocketValid())
+            {
+                Logger.logError("Connection of (" + client.getName() + ") failed: " + e.getMessage());
+                disconnect(client);
             }
         }
+    }
 
-        Client finalClient = client;
+    // One virtual thread per connection when the JVM has them (Java 21), a platform thread otherwise.
+    private static ExecutorService newThreadPerConnectionExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            Logger.logInfo("Serving every connection on its own virtual thread.");
+            return executor;
+        } catch (ReflectiveOperationException ex) {
+            Logger.logWarning("Virtual threads are not available, serving every connection on its own platform thread.");
+            return Executors.newCachedThreadPool();
+        }
+    }
 
-        service.submit(() -> {
-            synchronized (monitor) {
-                if (finalClient.getClientState() < Client.ESTABLISHED)
-                    return ;
+    private void acceptConnections(ServerSocketChannel serverSocketChannel) {
+        try {
+            while (true)
+            {
+                SocketChannel socketChannel = serverSocketChannel.accept();
+                Client client = newClient(socketChannel);
+                // Writes from other connections run on their own threads, Client serializes them.
+                client.setExecutor(Runnable::run);
+                addClient(client);
+                watch(client);
+                connections.execute(() -> serve(client));
+            }
+        } catch (IOException ex) {
+            Logger.logError("Accept: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
 
-                if (!finalClient.isTargetFound() || !finalClient.parser.isValid() || !finalClient.isValid())
-                {
-                    try {
-                        sendSessionRejectMessage(socketChannel, finalClient, selector);
-                    } catch (IOException ex) {
-                        Logger.logError("Sending session reject message to (" + finalClient.getName() + ") failed: " + ex.getMessage());
-                        finalClient.setSocketValid(false);
-                        key.cancel();
-                    }
-                    return ;
-                }
+    private void startThreadPerConnection() throws IOException {
+        connections = newThreadPerConnectionExecutor();
 
-                if (!finalClient.isIdSent())
-                {
-                    try {
-                        sendUniqueId(socketChannel, finalClient, selector);
-                    } catch (IOException ex) {
-                        Logger.logError("Sending unique id to (" + finalClient.getName() + ") failed: " + ex.getMessage());
-                        finalClient.setSocketValid(false);
-                        key.cancel();
-                    }
-                    return ;
-                }
+        ServerSocketChannel marketServerSocketChannel = ServerSocketChannel.open();
+        marketServerSocketChannel.bind(new InetSocketAddress("localhost", marketPort));
 
-                Client sourceClient = routingTable.get(finalClient);
+        ServerSocketChannel brokerServerSocketChannel = ServerSocketChannel.open();
+        brokerServerSocketChannel.bind(new InetSocketAddress("localhost", brokerPort));
 
-                if (sourceClient != null)
-                {
-                    if (!sourceClient.isSocketValid())
-                    {
-                        try {
-                            sendSessionRejectMessage(socketChannel, finalClient, selector);
-                        } catch (IOException ex) {
-                            Logger.logError("Sending session reject message to (" + finalClient.getName() + ") failed: " + ex.getMessage());
-                            finalClient.setSocketValid(false);
-                            key.cancel();
-                        }
-                    }
-                    else if (sourceClient.messageComplete())
-                    {
-                        try {
-                            forwardMessage(socketChannel, finalClient, sourceClient, selector);
-                        } catch (IOException ex) {
-                            Logger.logError("Forwarding data to (" + finalClient.getName() + ") failed: " + ex.getMessage());
-                            finalClient.setSocketValid(false);
-                            key.cancel();
-                        }
-                    }
-                }
-            }
-        });
+        Thread marketAcceptor = new Thread(() -> acceptConnections(marketServerSocketChannel), "market-acceptor");
+        marketAcceptor.start();
+        acceptConnections(brokerServerSocketChannel);
     }
 
     public void start() {
+        livenessWheel.start();
         try {
+            if (threadPerConnection)
+            {
+                startThreadPerConnection();
+                return ;
+            }
+
             Selector selector = Selector.open();
 
+            if (reactorCount > 0)
+            {
+                reactors = new Reactor[reactorCount];
+                for (int i = 0; i < reactorCount; i++)
+                {
+                    reactors[i] = new Reactor("reactor-" + i, this::handle);
+                    reactors[i].start();
+                }
+                Logger.logInfo("Started " + reactorCount + " reactors.");
+            }
+
             ServerSocketChannel marketServerSocketChannel =  ServerSocketChannel.open();
             marketServerSocketChannel.configureBlocking(false);
             marketServerSocketChannel.bind(new InetSocketAddress("localhost", marketPort));
@@ -499,6 +858,7 @@ public class Server {
             brokerServerSocketChannel.bind(new InetSocketAddress("localhost", brokerPort));
             brokerServerSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
 
+            // In multi-reactor mode this selector only accepts, client sockets live on the reactors.
             while (true)
             {
                 selector.select();
@@ -506,18 +866,16 @@ public class Server {
 
                 while (iterator.hasNext()) {
                     SelectionKey key = iterator.next();
+                    iterator.remove();
 
-                    if (key.isAcceptable()) {
+                    // Key was cancelled by a task since it was selected.
+                    if (!key.isValid())
+                        continue ;
+
+                    if (key.isAcceptable())
                         accept(selector, key);
-                    }
-                    else if (key.isReadable()) {
-                        read(selector, key);
-                        iterator.remove();
-                    }
-                    else if (key.isWritable()) {
-                        write(selector, key);
-                        iterator.remove();
-                    }
+                    else
+                        handle(selector, key);
                 }
             }
         } catch (IOException ex)
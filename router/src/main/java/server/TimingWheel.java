@@ -0,0 +1,128 @@
+package server;
+
+import logger.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Hashed timing wheel: a ring of buckets, one per tick, swept by a single thread.
+// A timeout goes in the bucket its deadline hashes to, with the number of full turns
+// left before it is due, so scheduling and cancelling are O(1) whatever the number
+// of timeouts. Deadlines are rounded up to the next tick.
+public class TimingWheel {
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick)
+        {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public void cancel()
+        {
+            this.cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final ArrayDeque<Timeout>[] buckets;
+    private final int mask;
+
+    // Timeouts scheduled from other threads, moved to their bucket by the wheel thread on its next tick.
+    private final ConcurrentLinkedQueue<Timeout> pending;
+    private final Thread thread;
+    private final long startTime;
+    private volatile long tick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String name, long tickMillis, int wheelSize)
+    {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 1));
+        if (size < wheelSize)
+            size <<= 1;
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayDeque[size];
+        for (int i = 0; i < size; i++)
+            this.buckets[i] = new ArrayDeque<>();
+        this.mask = size - 1;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start()
+    {
+        thread.start();
+    }
+
+    // Runs task on the wheel thread once delayMillis have passed, it should only hand work over to another thread.
+    public Timeout schedule(Runnable task, long delayMillis)
+    {
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        Timeout timeout = new Timeout(task, tick + ticks);
+        pending.offer(timeout);
+        return timeout;
+    }
+
+    private void transferPending()
+    {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null)
+        {
+            if (timeout.cancelled)
+                continue ;
+            // Never behind the current tick, a late timeout expires on this sweep.
+            long deadline = Math.max(timeout.deadlineTick, tick);
+            timeout.rounds = (deadline - tick) / buckets.length;
+            buckets[(int) (deadline & mask)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket)
+    {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext())
+        {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled)
+                iterator.remove();
+            else if (timeout.rounds > 0)
+                timeout.rounds--;
+            else
+            {
+                iterator.remove();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException ex) {
+                    Logger.logError("Timeout failed: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void run()
+    {
+        while (true)
+        {
+            long deadline = startTime + (tick + 1) * tickMillis * 1_000_000L;
+            long sleepMillis = (deadline - System.nanoTime() + 999_999) / 1_000_000;
+            if (sleepMillis > 0)
+            {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException ex) {
+                    return ;
+                }
+            }
+            tick++;
+            transferPending();
+            expire(buckets[(int) (tick & mask)]);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package server;
+
+import client.Client;
+import engineFIX.EngineFIX;
+import engineFIX.FixFramer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.*;
+
+public class ServerTest {
+    private static final char delimiter = '\u0001';
+
+    private static SocketChannel connect(int port) throws Exception
+    {
+        for (int attempt = 0; ; attempt++)
+        {
+            SocketChannel channel = SocketChannel.open();
+            // The market reads nothing after logon, what the router writes to it piles up right away.
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            try {
+                channel.connect(new InetSocketAddress("localhost", port));
+                return channel;
+            } catch (IOException ex) {
+                channel.close();
+                if (attempt == 100)
+                    throw ex;
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    // Unique id the router answers the logon with.
+    private static String logOn(SocketChannel channel, String name, String target) throws Exception
+    {
+        channel.write(ByteBuffer.wrap(EngineFIX.constructIdentificationMessage("NONE", name, target).getBytes()));
+        FixFramer framer = new FixFramer();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (!framer.next())
+        {
+            buffer.clear();
+            assertTrue(channel.read(buffer) > 0);
+            framer.consume(buffer.array(), 0, buffer.position());
+        }
+        EngineFIX parser = new EngineFIX();
+        parser.consume(framer.getBuffer(), framer.getOffset(), framer.getLength());
+        assertTrue(parser.isLogon());
+        return parser.getSenderSubID();
+    }
+
+    private static byte[] orders(String uniqueId, int count)
+    {
+        String body = "35=D" + delimiter + "49=broker" + delimiter + "50=" + uniqueId + delimiter
+                + "56=market" + delimiter + "55=apple" + delimiter + "54=buy" + delimiter
+                + "38=1" + delimiter + "44=5" + delimiter;
+        String message = "8=FIX.4.4" + delimiter + "9=" + body.length() + delimiter + body;
+        message += "10=" + (EngineFIX.calculateCheckSum(message) % 256) + delimiter;
+        return message.repeat(count).getBytes();
+    }
+
+    @Test
+    public void testBrokerIsPausedByMarketThatNeverReads() throws Exception
+    {
+        PrintStream out = System.out;
+        // Every routed message is logged, the flood would bury the test output.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Server server = new Server();
+            Thread thread = new Thread(server::start, "router");
+            thread.setDaemon(true);
+            thread.start();
+
+            SocketChannel market = connect(5001);
+            String marketId = logOn(market, "market", "market");
+            SocketChannel broker = connect(5000);
+            String brokerId = logOn(broker, "broker", "market");
+
+            Client marketSession = server.getSession(marketId);
+            Client brokerSession = server.getSession(brokerId);
+            assertNotNull(marketSession);
+            assertNotNull(brokerSession);
+
+            // The broker floods orders. While the socket buffers of the market still take them the broker may
+            // be paused for a moment, until the market's executor catches up, then it stays paused for good.
+            broker.configureBlocking(false);
+            ByteBuffer flood = ByteBuffer.wrap(orders(brokerId, 100));
+            long deadline = System.nanoTime() + 30_000_000_000L;
+            long pausedSince = 0;
+            while (System.nanoTime() < deadline)
+            {
+                if (!brokerSession.isReadPaused())
+                    pausedSince = 0;
+                else if (pausedSince == 0)
+                    pausedSince = System.nanoTime();
+                else if (System.nanoTime() - pausedSince > 1_000_000_000L)
+                    break ;
+                if (!flood.hasRemaining())
+                    flood.rewind();
+                if (broker.write(flood) == 0)
+                    Thread.sleep(1);
+            }
+            assertTrue(brokerSession.isReadPaused());
+            // The broker is paused above the high watermark and read again below the low one.
+            assertTrue(marketSession.getOutboundBytes() >= Server.outboundLowWatermark);
+            assertTrue(marketSession.getOutboundBytes() <= Server.outboundHighWatermark + Server.messageBufferSize);
+            assertTrue(marketSession.isSocketValid());
+
+            // Nothing reads the broker anymore, its socket stops taking orders once the kernel buffers are full.
+            long stalledSince = 0;
+            deadline = System.nanoTime() + 30_000_000_000L;
+            while (System.nanoTime() < deadline && (stalledSince == 0 || System.nanoTime() - stalledSince < 500_000_000L))
+            {
+                if (!flood.hasRemaining())
+                    flood.rewind();
+                if (broker.write(flood) > 0)
+                    stalledSince = 0;
+                else if (stalledSince == 0)
+                    stalledSince = System.nanoTime();
+                Thread.sleep(1);
+            }
+            assertNotEquals(0, stalledSince);
+            assertTrue(brokerSession.isReadPaused());
+            assertTrue(marketSession.getOutboundBytes() <= Server.outboundHighWatermark + Server.messageBufferSize);
+
+            broker.close();
+            market.close();
+        } finally {
+            System.setOut(out);
+        }
+    }
+}